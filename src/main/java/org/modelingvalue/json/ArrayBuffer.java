@@ -0,0 +1,262 @@
+//~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+//  (C) Copyright 2018-2026 Modeling Value Group B.V. (http://modelingvalue.org)                                         ~
+//                                                                                                                       ~
+//  Licensed under the GNU Lesser General Public License v3.0 (the 'License'). You may not use this file except in       ~
+//  compliance with the License. You may obtain a copy of the License at: https://choosealicense.com/licenses/lgpl-3.0   ~
+//  Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on  ~
+//  an 'AS IS' BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the   ~
+//  specific language governing permissions and limitations under the License.                                           ~
+//                                                                                                                       ~
+//  Maintainers:                                                                                                         ~
+//      Wim Bast, Tom Brus                                                                                               ~
+//                                                                                                                       ~
+//  Contributors:                                                                                                        ~
+//      Ronald Krijgsheld ✝, Arjan Kok, Carel Bast                                                                       ~
+// --------------------------------------------------------------------------------------------------------------------- ~
+//  In Memory of Ronald Krijgsheld, 1972 - 2023                                                                          ~
+//      Ronald was suddenly and unexpectedly taken from us. He was not only our long-term colleague and team member      ~
+//      but also our friend. "He will live on in many of the lines of code you see below."                               ~
+//~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+package org.modelingvalue.json;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+
+// growable buffer that collects the elements of a json array and is trimmed to an exact array at close
+abstract class ArrayBuffer {
+    private static final int INITIAL_CAPACITY = 16;
+
+    static ArrayBuffer of(Class<?> componentClass) {
+        if (componentClass == long.class) {
+            return new LongArrayBuffer();
+        } else if (componentClass == int.class) {
+            return new IntArrayBuffer();
+        } else if (componentClass == short.class) {
+            return new ShortArrayBuffer();
+        } else if (componentClass == byte.class) {
+            return new ByteArrayBuffer();
+        } else if (componentClass == char.class) {
+            return new CharArrayBuffer();
+        } else if (componentClass == double.class) {
+            return new DoubleArrayBuffer();
+        } else if (componentClass == float.class) {
+            return new FloatArrayBuffer();
+        } else if (componentClass == boolean.class) {
+            return new BooleanArrayBuffer();
+        } else {
+            return new ObjectArrayBuffer(componentClass);
+        }
+    }
+
+    int size;
+
+    abstract Object toArray();
+
+    void clear() {
+        size = 0;
+    }
+
+    static int grow(int capacity) {
+        return Math.max(INITIAL_CAPACITY, capacity + (capacity >> 1));
+    }
+
+    void add(Object v) {
+        throw new IllegalArgumentException("can't add " + (v == null ? "<null>" : "a '" + v.getClass().getSimpleName() + "'") + " to " + getClass().getSimpleName());
+    }
+
+    void add(long v) {
+        add((Object) v);
+    }
+
+    void add(int v) {
+        add((Object) v);
+    }
+
+    void add(short v) {
+        add((Object) v);
+    }
+
+    void add(byte v) {
+        add((Object) v);
+    }
+
+    void add(char v) {
+        add((Object) v);
+    }
+
+    void add(double v) {
+        add((Object) v);
+    }
+
+    void add(float v) {
+        add((Object) v);
+    }
+
+    void add(boolean v) {
+        add((Object) v);
+    }
+
+    static final class LongArrayBuffer extends ArrayBuffer {
+        private long[] a = new long[0];
+
+        @Override
+        void add(long v) {
+            if (size == a.length) {
+                a = Arrays.copyOf(a, grow(size));
+            }
+            a[size++] = v;
+        }
+
+        @Override
+        Object toArray() {
+            return Arrays.copyOf(a, size);
+        }
+    }
+
+    static final class IntArrayBuffer extends ArrayBuffer {
+        private int[] a = new int[0];
+
+        @Override
+        void add(int v) {
+            if (size == a.length) {
+                a = Arrays.copyOf(a, grow(size));
+            }
+            a[size++] = v;
+        }
+
+        @Override
+        Object toArray() {
+            return Arrays.copyOf(a, size);
+        }
+    }
+
+    static final class ShortArrayBuffer extends ArrayBuffer {
+        private short[] a = new short[0];
+
+        @Override
+        void add(short v) {
+            if (size == a.length) {
+                a = Arrays.copyOf(a, grow(size));
+            }
+            a[size++] = v;
+        }
+
+        @Override
+        Object toArray() {
+            return Arrays.copyOf(a, size);
+        }
+    }
+
+    static final class ByteArrayBuffer extends ArrayBuffer {
+        private byte[] a = new byte[0];
+
+        @Override
+        void add(byte v) {
+            if (size == a.length) {
+                a = Arrays.copyOf(a, grow(size));
+            }
+            a[size++] = v;
+        }
+
+        @Override
+        Object toArray() {
+            return Arrays.copyOf(a, size);
+        }
+    }
+
+    static final class CharArrayBuffer extends ArrayBuffer {
+        private char[] a = new char[0];
+
+        @Override
+        void add(char v) {
+            if (size == a.length) {
+                a = Arrays.copyOf(a, grow(size));
+            }
+            a[size++] = v;
+        }
+
+        @Override
+        Object toArray() {
+            return Arrays.copyOf(a, size);
+        }
+    }
+
+    static final class DoubleArrayBuffer extends ArrayBuffer {
+        private double[] a = new double[0];
+
+        @Override
+        void add(double v) {
+            if (size == a.length) {
+                a = Arrays.copyOf(a, grow(size));
+            }
+            a[size++] = v;
+        }
+
+        @Override
+        Object toArray() {
+            return Arrays.copyOf(a, size);
+        }
+    }
+
+    static final class FloatArrayBuffer extends ArrayBuffer {
+        private float[] a = new float[0];
+
+        @Override
+        void add(float v) {
+            if (size == a.length) {
+                a = Arrays.copyOf(a, grow(size));
+            }
+            a[size++] = v;
+        }
+
+        @Override
+        Object toArray() {
+            return Arrays.copyOf(a, size);
+        }
+    }
+
+    static final class BooleanArrayBuffer extends ArrayBuffer {
+        private boolean[] a = new boolean[0];
+
+        @Override
+        void add(boolean v) {
+            if (size == a.length) {
+                a = Arrays.copyOf(a, grow(size));
+            }
+            a[size++] = v;
+        }
+
+        @Override
+        Object toArray() {
+            return Arrays.copyOf(a, size);
+        }
+    }
+
+    static final class ObjectArrayBuffer extends ArrayBuffer {
+        private Object[] a;
+
+        ObjectArrayBuffer(Class<?> componentClass) {
+            a = (Object[]) Array.newInstance(componentClass, 0);
+        }
+
+        @Override
+        void add(Object v) {
+            if (size == a.length) {
+                a = Arrays.copyOf(a, grow(size));
+            }
+            a[size++] = v;
+        }
+
+        @Override
+        Object toArray() {
+            return Arrays.copyOf(a, size);
+        }
+
+        @Override
+        void clear() {
+            Arrays.fill(a, 0, size, null);
+            super.clear();
+        }
+    }
+}
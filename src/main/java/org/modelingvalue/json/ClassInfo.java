@@ -23,21 +23,21 @@ package org.modelingvalue.json;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
-import java.util.Set;
 import java.util.stream.Stream;
 
 class ClassInfo {
     private final Class<?>               clazz;
-    private final Config                 config;
-    private final List<PropertyAccessor> properties    = new ArrayList<>();
+    private final Config.Frozen          config;
+    private final List<PropertyAccessor> properties = new ArrayList<>();
+    private final PropertyAccessor[]     propertyArray;
+    private final char[][]               propertyKeys;
+    private final char[]                 classNameKey;
     private final PropertyAccessor       idProperty;
-    private final Set<Object>            seenBeforeSet = new HashSet<>();
 
-    ClassInfo(Class<?> clazz, Config config) {
+    ClassInfo(Class<?> clazz, Config.Frozen config) {
         this.clazz  = clazz;
         this.config = config;
 
@@ -52,25 +52,50 @@ class ClassInfo {
             properties.remove(idProperty);
             properties.add(0, idProperty);
         }
+        propertyArray = properties.toArray(PropertyAccessor[]::new);
+        propertyKeys  = properties.stream().map(pa -> keyFragment(pa.name())).toArray(char[][]::new);
+        classNameKey  = keyFragment(U.CLASS_NAME_FIELD_NAME);
     }
 
-    private boolean firstOccurrence(Object o) {
-        if (idProperty == null) {
-            return true;
-        }
-        if (!seenBeforeSet.contains(o)) {
-            seenBeforeSet.add(o);
-            return true;
-        }
-        return false;
+    // the escaped ',"name":' that precedes a value, written in one go by ToJson
+    private static char[] keyFragment(String name) {
+        StringBuilder b = new StringBuilder(name.length() + 4);
+        b.append(',');
+        ToJson.appendQuoted(b, name);
+        b.append(':');
+        return b.toString().toCharArray();
+    }
+
+    Class<?> getClazz() {
+        return clazz;
+    }
+
+    PropertyAccessor[] getProperties() {
+        return propertyArray;
+    }
+
+    char[][] getPropertyKeys() {
+        return propertyKeys;
+    }
+
+    char[] getClassNameKey() {
+        return classNameKey;
+    }
+
+    PropertyAccessor getIdProperty() {
+        return idProperty;
+    }
+
+    boolean firstOccurrence(Object o, IdentitySeenSet seen) {
+        return idProperty == null || seen.add(o);
     }
 
-    public Iterator<Entry<Object, Object>> getIntrospectionIterator(Object o) {
+    public Iterator<Entry<Object, Object>> getIntrospectionIterator(Object o, IdentitySeenSet seen) {
         Stream<Entry<Object, Object>> entryStream;
-        if (firstOccurrence(o)) {
+        if (firstOccurrence(o, seen)) {
             // first time, render the whole thing:
             entryStream = properties.stream().map(m -> new SimpleEntry<>(m.name(), m.get(o)));
-            if (config.includeClassNameInIntrospection) {
+            if (config.includeClassNameInIntrospection()) {
                 entryStream = Stream.concat(Stream.of(new SimpleEntry<>(U.CLASS_NAME_FIELD_NAME, clazz.getName())), entryStream);
             }
         } else {
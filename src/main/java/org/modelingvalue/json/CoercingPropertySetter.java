@@ -127,6 +127,100 @@ class CoercingPropertySetter implements PropertySetter {
         return new CoercingPropertySetter(name + " []", nullFs, longFs, doubleFs, boolFs, stringFs, objectFs);
     }
 
+    static PropertySetter forArray(Type componentType) {
+        String         name;
+        PropertySetter nullFs;
+        PropertySetter longFs;
+        PropertySetter doubleFs;
+        PropertySetter boolFs;
+        PropertySetter stringFs;
+        PropertySetter objectFs;
+
+        Class<?> componentClass = U.getRawClassOf(componentType);
+        if (componentClass == long.class || componentClass == Long.class) {
+            name     = "long";
+            nullFs   = componentClass.isPrimitive() ? null : (o, key, v) -> addArrayElement(o, (Long) null);
+            longFs   = (o, key, v) -> addArrayElement(o, (long) v);
+            doubleFs = null;
+            boolFs   = null;
+            stringFs = (o, key, v) -> addArrayElement(o, Long.parseLong((String) v));
+            objectFs = (o, key, v) -> addArrayElement(o, v);
+        } else if (componentClass == double.class || componentClass == Double.class) {
+            name     = "double";
+            nullFs   = componentClass.isPrimitive() ? null : (o, key, v) -> addArrayElement(o, (Double) null);
+            longFs   = (o, key, v) -> addArrayElement(o, (double) (long) v);
+            doubleFs = (o, key, v) -> addArrayElement(o, (double) v);
+            boolFs   = null;
+            stringFs = (o, key, v) -> addArrayElement(o, Double.parseDouble((String) v));
+            objectFs = (o, key, v) -> addArrayElement(o, v);
+        } else if (componentClass == int.class || componentClass == Integer.class) {
+            name     = "int";
+            nullFs   = componentClass.isPrimitive() ? null : (o, key, v) -> addArrayElement(o, (Integer) null);
+            longFs   = (o, key, v) -> addArrayElement(o, (int) (long) v);
+            doubleFs = null;
+            boolFs   = null;
+            stringFs = (o, key, v) -> addArrayElement(o, Integer.parseInt((String) v));
+            objectFs = (o, key, v) -> addArrayElement(o, v);
+        } else if (componentClass == boolean.class || componentClass == Boolean.class) {
+            name     = "boolean";
+            nullFs   = componentClass.isPrimitive() ? null : (o, key, v) -> addArrayElement(o, (Boolean) null);
+            longFs   = null;
+            doubleFs = null;
+            boolFs   = (o, key, v) -> addArrayElement(o, (boolean) v);
+            stringFs = (o, key, v) -> addArrayElement(o, Boolean.parseBoolean((String) v));
+            objectFs = (o, key, v) -> addArrayElement(o, v);
+        } else if (componentClass == byte.class || componentClass == Byte.class) {
+            name     = "byte";
+            nullFs   = componentClass.isPrimitive() ? null : (o, key, v) -> addArrayElement(o, (Byte) null);
+            longFs   = (o, key, v) -> addArrayElement(o, (byte) (long) v);
+            doubleFs = null;
+            boolFs   = null;
+            stringFs = (o, key, v) -> addArrayElement(o, Byte.parseByte((String) v));
+            objectFs = (o, key, v) -> addArrayElement(o, v);
+        } else if (componentClass == short.class || componentClass == Short.class) {
+            name     = "short";
+            nullFs   = componentClass.isPrimitive() ? null : (o, key, v) -> addArrayElement(o, (Short) null);
+            longFs   = (o, key, v) -> addArrayElement(o, (short) (long) v);
+            doubleFs = null;
+            boolFs   = null;
+            stringFs = (o, key, v) -> addArrayElement(o, Short.parseShort((String) v));
+            objectFs = (o, key, v) -> addArrayElement(o, v);
+        } else if (componentClass == char.class || componentClass == Character.class) {
+            name     = "char";
+            nullFs   = componentClass.isPrimitive() ? null : (o, key, v) -> addArrayElement(o, (Character) null);
+            longFs   = (o, key, v) -> addArrayElement(o, (char) (long) v);
+            doubleFs = null;
+            boolFs   = null;
+            stringFs = (o, key, v) -> addArrayElement(o, ((String) v).charAt(0));
+            objectFs = (o, key, v) -> addArrayElement(o, v);
+        } else if (componentClass == float.class || componentClass == Float.class) {
+            name     = "float";
+            nullFs   = componentClass.isPrimitive() ? null : (o, key, v) -> addArrayElement(o, (Float) null);
+            longFs   = (o, key, v) -> addArrayElement(o, (float) (long) v);
+            doubleFs = (o, key, v) -> addArrayElement(o, (float) (double) v);
+            boolFs   = null;
+            stringFs = (o, key, v) -> addArrayElement(o, Float.parseFloat((String) v));
+            objectFs = (o, key, v) -> addArrayElement(o, v);
+        } else if (componentClass == String.class) {
+            name     = "String";
+            nullFs   = (o, key, v) -> addArrayElement(o, null);
+            longFs   = (o, key, v) -> addArrayElement(o, Long.toString((long) v));
+            doubleFs = (o, key, v) -> addArrayElement(o, Double.toString((double) v));
+            boolFs   = (o, key, v) -> addArrayElement(o, Boolean.toString((boolean) v));
+            stringFs = (o, key, v) -> addArrayElement(o, (String) v);
+            objectFs = (o, key, v) -> addArrayElement(o, v);
+        } else {
+            name     = "other";
+            nullFs   = (o, key, v) -> addArrayElement(o, (Object) null);
+            longFs   = null;
+            doubleFs = null;
+            boolFs   = null;
+            stringFs = null;
+            objectFs = (o, key, v) -> addArrayElement(o, v);
+        }
+        return new CoercingPropertySetter(name + " array", nullFs, longFs, doubleFs, boolFs, stringFs, objectFs);
+    }
+
     static PropertySetter forMap(Type mapValueType) {
         String         name;
         PropertySetter nullFs;
@@ -221,7 +315,101 @@ class CoercingPropertySetter implements PropertySetter {
         return new CoercingPropertySetter(name + " Map", nullFs, longFs, doubleFs, boolFs, stringFs, objectFs);
     }
 
-    static CoercingPropertySetter forProperty(PropertyAccessor pa, Config config) {
+    static PropertySetter forRecordComponent(Type componentType, int slot) {
+        String         name;
+        PropertySetter nullFs;
+        PropertySetter longFs;
+        PropertySetter doubleFs;
+        PropertySetter boolFs;
+        PropertySetter stringFs;
+        PropertySetter objectFs;
+
+        Class<?> componentClass = U.getRawClassOf(componentType);
+        if (componentClass == long.class || componentClass == Long.class) {
+            name     = "long";
+            nullFs   = componentClass.isPrimitive() ? null : (o, key, v) -> setRecordSlot(o, slot, null);
+            longFs   = (o, key, v) -> setRecordSlot(o, slot, (long) v);
+            doubleFs = (o, key, v) -> setRecordSlot(o, slot, (long) (double) v);
+            boolFs   = null;
+            stringFs = (o, key, v) -> setRecordSlot(o, slot, Long.parseLong((String) v));
+            objectFs = (o, key, v) -> setRecordSlot(o, slot, v);
+        } else if (componentClass == double.class || componentClass == Double.class) {
+            name     = "double";
+            nullFs   = componentClass.isPrimitive() ? null : (o, key, v) -> setRecordSlot(o, slot, null);
+            longFs   = (o, key, v) -> setRecordSlot(o, slot, (double) (long) v);
+            doubleFs = (o, key, v) -> setRecordSlot(o, slot, (double) v);
+            boolFs   = null;
+            stringFs = (o, key, v) -> setRecordSlot(o, slot, Double.parseDouble((String) v));
+            objectFs = (o, key, v) -> setRecordSlot(o, slot, v);
+        } else if (componentClass == int.class || componentClass == Integer.class) {
+            name     = "int";
+            nullFs   = componentClass.isPrimitive() ? null : (o, key, v) -> setRecordSlot(o, slot, null);
+            longFs   = (o, key, v) -> setRecordSlot(o, slot, (int) (long) v);
+            doubleFs = (o, key, v) -> setRecordSlot(o, slot, (int) (double) v);
+            boolFs   = null;
+            stringFs = (o, key, v) -> setRecordSlot(o, slot, Integer.parseInt((String) v));
+            objectFs = (o, key, v) -> setRecordSlot(o, slot, v);
+        } else if (componentClass == boolean.class || componentClass == Boolean.class) {
+            name     = "boolean";
+            nullFs   = componentClass.isPrimitive() ? null : (o, key, v) -> setRecordSlot(o, slot, null);
+            longFs   = null;
+            doubleFs = null;
+            boolFs   = (o, key, v) -> setRecordSlot(o, slot, (boolean) v);
+            stringFs = (o, key, v) -> setRecordSlot(o, slot, Boolean.parseBoolean((String) v));
+            objectFs = (o, key, v) -> setRecordSlot(o, slot, v);
+        } else if (componentClass == byte.class || componentClass == Byte.class) {
+            name     = "byte";
+            nullFs   = componentClass.isPrimitive() ? null : (o, key, v) -> setRecordSlot(o, slot, null);
+            longFs   = (o, key, v) -> setRecordSlot(o, slot, (byte) (long) v);
+            doubleFs = (o, key, v) -> setRecordSlot(o, slot, (byte) (double) v);
+            boolFs   = null;
+            stringFs = (o, key, v) -> setRecordSlot(o, slot, Byte.parseByte((String) v));
+            objectFs = (o, key, v) -> setRecordSlot(o, slot, v);
+        } else if (componentClass == short.class || componentClass == Short.class) {
+            name     = "short";
+            nullFs   = componentClass.isPrimitive() ? null : (o, key, v) -> setRecordSlot(o, slot, null);
+            longFs   = (o, key, v) -> setRecordSlot(o, slot, (short) (long) v);
+            doubleFs = (o, key, v) -> setRecordSlot(o, slot, (short) (double) v);
+            boolFs   = null;
+            stringFs = (o, key, v) -> setRecordSlot(o, slot, Short.parseShort((String) v));
+            objectFs = (o, key, v) -> setRecordSlot(o, slot, v);
+        } else if (componentClass == char.class || componentClass == Character.class) {
+            name     = "char";
+            nullFs   = componentClass.isPrimitive() ? null : (o, key, v) -> setRecordSlot(o, slot, null);
+            longFs   = (o, key, v) -> setRecordSlot(o, slot, (char) (long) v);
+            doubleFs = null;
+            boolFs   = null;
+            stringFs = (o, key, v) -> setRecordSlot(o, slot, ((String) v).charAt(0));
+            objectFs = (o, key, v) -> setRecordSlot(o, slot, v);
+        } else if (componentClass == float.class || componentClass == Float.class) {
+            name     = "float";
+            nullFs   = componentClass.isPrimitive() ? null : (o, key, v) -> setRecordSlot(o, slot, null);
+            longFs   = (o, key, v) -> setRecordSlot(o, slot, (float) (long) v);
+            doubleFs = (o, key, v) -> setRecordSlot(o, slot, (float) (double) v);
+            boolFs   = null;
+            stringFs = (o, key, v) -> setRecordSlot(o, slot, Float.parseFloat((String) v));
+            objectFs = (o, key, v) -> setRecordSlot(o, slot, v);
+        } else if (componentClass == String.class) {
+            name     = "String";
+            nullFs   = (o, key, v) -> setRecordSlot(o, slot, null);
+            longFs   = (o, key, v) -> setRecordSlot(o, slot, Long.toString((long) v));
+            doubleFs = (o, key, v) -> setRecordSlot(o, slot, Double.toString((double) v));
+            boolFs   = (o, key, v) -> setRecordSlot(o, slot, Boolean.toString((boolean) v));
+            stringFs = (o, key, v) -> setRecordSlot(o, slot, v);
+            objectFs = (o, key, v) -> setRecordSlot(o, slot, v);
+        } else {
+            name     = "other";
+            nullFs   = (o, key, v) -> setRecordSlot(o, slot, null);
+            longFs   = (o, key, v) -> setRecordSlot(o, slot, v);
+            doubleFs = (o, key, v) -> setRecordSlot(o, slot, v);
+            boolFs   = (o, key, v) -> setRecordSlot(o, slot, v);
+            stringFs = (o, key, v) -> setRecordSlot(o, slot, v);
+            objectFs = (o, key, v) -> setRecordSlot(o, slot, v);
+        }
+        return new CoercingPropertySetter(name + " record component #" + slot, nullFs, longFs, doubleFs, boolFs, stringFs, objectFs);
+    }
+
+    static CoercingPropertySetter forProperty(PropertyAccessor pa, Config.Frozen config) {
         String         name;
         PropertySetter nullFs;
         PropertySetter longFs;
@@ -337,7 +525,7 @@ class CoercingPropertySetter implements PropertySetter {
             boolFs   = (o, key, v) -> setProperty(pa, o, v);
             stringFs = (o, key, v) -> setProperty(pa, o, v);
             objectFs = (o, key, v) -> setProperty(pa, o, v);
-        } else if (!config.ignoreSFOs) {
+        } else if (!config.ignoreSFOs()) {
             PropertySetter tmp;
             name     = "Constructor";
             nullFs   = (o, key, v) -> setProperty(pa, o, (Object) null);
@@ -684,4 +872,71 @@ class CoercingPropertySetter implements PropertySetter {
         ((Map<Object, Float>) o).put(key, v);
         return o;
     }
+
+    //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    private static Object setRecordSlot(Object o, int slot, Object v) {
+        if (!(o instanceof Object[] slots)) {
+            throw new IllegalArgumentException("can't set a record component in a non slot array (" + o.getClass().getSimpleName() + ")");
+        }
+        slots[slot] = v;
+        return o;
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    private static Object addArrayElement(Object o, Object v) {
+        arrayBuffer(o).add(v);
+        return o;
+    }
+
+    private static Object addArrayElement(Object o, long v) {
+        arrayBuffer(o).add(v);
+        return o;
+    }
+
+    private static Object addArrayElement(Object o, int v) {
+        arrayBuffer(o).add(v);
+        return o;
+    }
+
+    private static Object addArrayElement(Object o, double v) {
+        arrayBuffer(o).add(v);
+        return o;
+    }
+
+    private static Object addArrayElement(Object o, String v) {
+        arrayBuffer(o).add(v);
+        return o;
+    }
+
+    private static Object addArrayElement(Object o, boolean v) {
+        arrayBuffer(o).add(v);
+        return o;
+    }
+
+    private static Object addArrayElement(Object o, short v) {
+        arrayBuffer(o).add(v);
+        return o;
+    }
+
+    private static Object addArrayElement(Object o, byte v) {
+        arrayBuffer(o).add(v);
+        return o;
+    }
+
+    private static Object addArrayElement(Object o, char v) {
+        arrayBuffer(o).add(v);
+        return o;
+    }
+
+    private static Object addArrayElement(Object o, float v) {
+        arrayBuffer(o).add(v);
+        return o;
+    }
+
+    private static ArrayBuffer arrayBuffer(Object o) {
+        if (!(o instanceof ArrayBuffer buffer)) {
+            throw new IllegalArgumentException("can't add an element to a non array object (" + o.getClass().getSimpleName() + ")");
+        }
+        return buffer;
+    }
 }
@@ -21,22 +21,57 @@
 package org.modelingvalue.json;
 
 import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 @SuppressWarnings("unused")
 public class Config {
+    public enum MapOrder {
+        SORTED,           // sorted on the toString() of the keys (maps that are already sorted that way are not sorted again)
+        INSERTION,        // the iteration order of the map itself
+        SORTED_MAP_ORDER  // the order of a SortedMap, other maps are SORTED
+    }
+
     public       boolean                       ignoreSFOs; // SFO = Single Field Object
     public       boolean                       includeClassNameInIntrospection;
     public       boolean                       ignoreNullValues;
     public       boolean                       ignoreUnkownFieldsInRecords;
+    public       boolean                       memoizeClassSelectors; // only for selectors that always return the same class for the same key and value
+    public       MapOrder                      mapOrder = MapOrder.SORTED;
+    public       boolean                       parallel; // render large arrays and collections in chunks on the common ForkJoinPool
+    public       String                        prettyIndent; // ToJson renders compact json when indent, eol and afterColon are all null
+    public       String                        prettyEol;
+    public       String                        prettyAfterColon;
+    public       boolean                       prettyStrict; // no one-liners for empty containers or containers with one simple value
     public final Map<Field, List<Annotation>>  extraFieldAnnotations  = new HashMap<>();
     public final Map<Method, List<Annotation>> extraMethodAnnotations = new HashMap<>();
+    private      Frozen                        frozen; // the last snapshot, handed out again as long as nothing changed
+
+    // the layout of JsonPrettyfier.pretty(), but rendered by ToJson in one go
+    public static Config pretty() {
+        Config c = new Config();
+        c.prettyIndent     = "  ";
+        c.prettyEol        = "\n";
+        c.prettyAfterColon = " ";
+        return c;
+    }
+
+    // an immutable snapshot of the current settings, used by the library to build its metadata
+    public Frozen freeze() {
+        Settings settings = new Settings(this);
+        Frozen   f        = frozen;
+        if (f == null || !f.settings.equals(settings)) {
+            frozen = f = new Frozen(settings);
+        }
+        return f;
+    }
 
     @SuppressWarnings("unchecked")
     public <T extends Annotation> T getAnnotation(Field f, Class<T> annotation) {
@@ -56,6 +91,16 @@ public class Config {
             public Class<? extends Annotation> annotationType() {
                 return JsonClassSelector.class;
             }
+
+            @Override
+            public boolean equals(Object o) {
+                return o instanceof JsonClassSelector;
+            }
+
+            @Override
+            public int hashCode() {
+                return 0;
+            }
         };
         for (Method m : ms) {
             add(m, a);
@@ -68,6 +113,16 @@ public class Config {
             public Class<? extends Annotation> annotationType() {
                 return JsonId.class;
             }
+
+            @Override
+            public boolean equals(Object o) {
+                return o instanceof JsonId;
+            }
+
+            @Override
+            public int hashCode() {
+                return 0;
+            }
         };
         for (Field f : fs) {
             add(f, a);
@@ -80,6 +135,16 @@ public class Config {
             public Class<? extends Annotation> annotationType() {
                 return JsonId.class;
             }
+
+            @Override
+            public boolean equals(Object o) {
+                return o instanceof JsonId;
+            }
+
+            @Override
+            public int hashCode() {
+                return 0;
+            }
         };
         for (Method m : ms) {
             add(m, a);
@@ -97,6 +162,17 @@ public class Config {
             public Class<? extends Annotation> annotationType() {
                 return JsonName.class;
             }
+
+            // as the jdk does for real annotations, so equal configs built apart are equal
+            @Override
+            public boolean equals(Object o) {
+                return o instanceof JsonName n && name.equals(n.value());
+            }
+
+            @Override
+            public int hashCode() {
+                return (127 * "value".hashCode()) ^ name.hashCode();
+            }
         });
     }
 
@@ -107,4 +183,125 @@ public class Config {
     private void add(Method m, Annotation annotation) {
         extraMethodAnnotations.compute(m, (k, v) -> Stream.concat(v == null ? Stream.empty() : v.stream(), Stream.of(annotation)).collect(Collectors.toList()));
     }
+
+    //////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // the values of all settings; equals() and hashCode() of a snapshot are those of this record
+    private record Settings(boolean ignoreSFOs,
+                            boolean includeClassNameInIntrospection,
+                            boolean ignoreNullValues,
+                            boolean ignoreUnkownFieldsInRecords,
+                            boolean memoizeClassSelectors,
+                            MapOrder mapOrder,
+                            boolean parallel,
+                            String prettyIndent,
+                            String prettyEol,
+                            String prettyAfterColon,
+                            boolean prettyStrict,
+                            Map<Field, List<Annotation>> extraFieldAnnotations,
+                            Map<Method, List<Annotation>> extraMethodAnnotations) {
+        private Settings(Config c) {
+            this(c.ignoreSFOs, c.includeClassNameInIntrospection, c.ignoreNullValues, c.ignoreUnkownFieldsInRecords, c.memoizeClassSelectors, c.mapOrder, c.parallel, c.prettyIndent, c.prettyEol, c.prettyAfterColon, c.prettyStrict, copy(c.extraFieldAnnotations), copy(c.extraMethodAnnotations));
+        }
+
+        private static <K> Map<K, List<Annotation>> copy(Map<K, List<Annotation>> m) {
+            return m.isEmpty() ? Map.of() : Map.copyOf(m.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> List.copyOf(e.getValue()))));
+        }
+    }
+
+    // an immutable copy of a Config: annotations are resolved once per member, and snapshots with the same
+    // settings and equal extra annotations are equal, so they can be used as a key for shared metadata
+    public static final class Frozen {
+        private final Settings                                                          settings;
+        private final int                                                               hash; // a snapshot is looked up as a key for every parsed type
+        private final Map<AnnotatedElement, Map<Class<? extends Annotation>, Annotation>> annotationIndex = new ConcurrentHashMap<>();
+
+        private Frozen(Settings settings) {
+            this.settings = settings;
+            this.hash     = settings.hashCode();
+        }
+
+        public boolean ignoreSFOs() {
+            return settings.ignoreSFOs();
+        }
+
+        public boolean includeClassNameInIntrospection() {
+            return settings.includeClassNameInIntrospection();
+        }
+
+        public boolean ignoreNullValues() {
+            return settings.ignoreNullValues();
+        }
+
+        public boolean ignoreUnkownFieldsInRecords() {
+            return settings.ignoreUnkownFieldsInRecords();
+        }
+
+        public boolean memoizeClassSelectors() {
+            return settings.memoizeClassSelectors();
+        }
+
+        public MapOrder mapOrder() {
+            return settings.mapOrder();
+        }
+
+        public boolean parallel() {
+            return settings.parallel();
+        }
+
+        public String prettyIndent() {
+            return settings.prettyIndent();
+        }
+
+        public String prettyEol() {
+            return settings.prettyEol();
+        }
+
+        public String prettyAfterColon() {
+            return settings.prettyAfterColon();
+        }
+
+        public boolean prettyStrict() {
+            return settings.prettyStrict();
+        }
+
+        public Map<Field, List<Annotation>> extraFieldAnnotations() {
+            return settings.extraFieldAnnotations();
+        }
+
+        public Map<Method, List<Annotation>> extraMethodAnnotations() {
+            return settings.extraMethodAnnotations();
+        }
+
+        @SuppressWarnings("unchecked")
+        public <T extends Annotation> T getAnnotation(Field f, Class<T> annotation) {
+            return (T) annotationIndex.computeIfAbsent(f, __ -> indexAnnotations(f, settings.extraFieldAnnotations().get(f))).get(annotation);
+        }
+
+        @SuppressWarnings("unchecked")
+        public <T extends Annotation> T getAnnotation(Method m, Class<T> annotation) {
+            return (T) annotationIndex.computeIfAbsent(m, __ -> indexAnnotations(m, settings.extraMethodAnnotations().get(m))).get(annotation);
+        }
+
+        // the extra annotations go before the ones in the code
+        private static Map<Class<? extends Annotation>, Annotation> indexAnnotations(AnnotatedElement e, List<Annotation> extra) {
+            Map<Class<? extends Annotation>, Annotation> index = new HashMap<>();
+            if (extra != null) {
+                extra.forEach(a -> index.putIfAbsent(a.annotationType(), a));
+            }
+            for (Annotation a : e.getAnnotations()) {
+                index.putIfAbsent(a.annotationType(), a);
+            }
+            return index;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || o instanceof Frozen f && hash == f.hash && settings.equals(f.settings);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
 }
@@ -209,7 +209,7 @@ public class FromJsonBase<ARRAY_TYPE, MAP_TYPE> {
         if (current != '}') {
 loop:
             while (true) {
-                Object key = makeMapKey(parseString());
+                Object key = parseMapKey();
                 skipWS();
                 if (current != ':') {
                     throw error("expected ':'");
@@ -272,6 +272,34 @@ A:
         return closeArray(l);
     }
 
+    protected Object parseMapKey() {
+        return makeMapKey(parseString());
+    }
+
+    // matches the string at the current position against the known keys without allocating,
+    // returns null (and does not move) when it is not a plain known key
+    String parseKnownString(KeyMatcher matcher) {
+        if (current != '"') {
+            return null;
+        }
+        int start = i + 1;
+        int end   = Math.min(input.length(), start + matcher.maxLength() + 1);
+        for (int j = start; j < end; j++) {
+            char c = input.charAt(j);
+            if (c == '"') {
+                String key = matcher.match(input, start, j);
+                if (key != null) {
+                    next(j + 1 - i);
+                }
+                return key;
+            }
+            if (c == '\\') {
+                return null;
+            }
+        }
+        return null;
+    }
+
     protected String parseString() {
         StringBuilder b = new StringBuilder();
         next();
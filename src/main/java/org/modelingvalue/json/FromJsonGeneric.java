@@ -28,7 +28,6 @@ import java.lang.reflect.Type;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Stack;
-import java.util.function.Consumer;
 
 public class FromJsonGeneric extends FromJsonBase<Object, Object> {
     public static <T> T fromJson(Type t, String s) {
@@ -45,13 +44,10 @@ public class FromJsonGeneric extends FromJsonBase<Object, Object> {
         }
     }
 
-    private final Stack<TypeInfo>     typeInfoStack    = new Stack<>();
-    private final Map<Type, TypeInfo> typeInfoMap      = new HashMap<>();
-    private final Consumer<TypeInfo>  topStackReplacer = replacement -> {
-        typeInfoStack.pop();
-        typeInfoStack.push(replacement);
-    };
-    private final Map<Object, Object> id2objectMap     = new HashMap<>();
+    private final Stack<TypeInfo>     typeInfoStack = new Stack<>();
+    private final TypeInfo.Spares     spares        = new TypeInfo.Spares();
+    private final Map<Object, Object> id2objectMap  = new HashMap<>();
+    private final Config.Frozen       frozen; // the key of the shared type metadata
 
     enum IdAcceptState {
         MAY_BE_MORE, MAY_BE_ID, MAY_NOT_BE_MORE
@@ -61,12 +57,12 @@ public class FromJsonGeneric extends FromJsonBase<Object, Object> {
 
     public FromJsonGeneric(Type t, String input, Config config) {
         super(input, config);
+        frozen = config.freeze();
         pushType(t);
     }
 
     private void pushType(Type fieldType) {
-        TypeInfo typeInfo = typeInfoMap.computeIfAbsent(fieldType, t_ -> TypeInfo.makeTypeInfo(fieldType, config, topStackReplacer));
-        typeInfoStack.push(typeInfo);
+        typeInfoStack.push(TypeInfo.of(fieldType, frozen));
     }
 
     private Object makeObject() {
@@ -74,11 +70,11 @@ public class FromJsonGeneric extends FromJsonBase<Object, Object> {
         if (!path.isEmpty()) {
             pushType(typeInfoStack.peek().getPropertyType(path.peek()));
         }
-        return typeInfoStack.peek().getMaker().make();
+        return typeInfoStack.peek().make(spares);
     }
 
     private Object closeObject(Object m) {
-        return typeInfoStack.pop().convert(m);
+        return typeInfoStack.pop().convert(m, spares);
     }
 
     ///////////////////////////////////////
@@ -91,6 +87,13 @@ public class FromJsonGeneric extends FromJsonBase<Object, Object> {
         return makeObject();
     }
 
+    @Override
+    protected Object parseMapKey() {
+        KeyMatcher matcher = typeInfoStack.peek().getKeyMatcher();
+        String     key     = matcher == null ? null : parseKnownString(matcher);
+        return key != null ? makeMapKey(key) : super.parseMapKey();
+    }
+
     @Override
     protected Object makeMapEntry(Object m, Object key, Object value) {
         TypeInfo typeInfo = typeInfoStack.peek();
@@ -117,9 +120,16 @@ public class FromJsonGeneric extends FromJsonBase<Object, Object> {
             case MAY_NOT_BE_MORE:
                 throw error("id references must be the only field present when referencing a previous object: found " + key + ": " + value);
         }
+        if (typeInfo instanceof TypeInfo.SelectorTypeInfo selector) {
+            // the first key decides the class of the object
+            typeInfo = selector.select(key, value);
+            typeInfoStack.pop();
+            typeInfoStack.push(typeInfo);
+            m = typeInfo.make(spares);
+        }
         PropertySetter propertySetter = typeInfo.getPropertySetter(key);
         if (propertySetter == null) {
-            if (!config.ignoreUnkownFieldsInRecords) {
+            if (!frozen.ignoreUnkownFieldsInRecords()) {
                 throw error("unknown field in record: " + key);
             }
             return m;
@@ -0,0 +1,100 @@
+//~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+//  (C) Copyright 2018-2026 Modeling Value Group B.V. (http://modelingvalue.org)                                         ~
+//                                                                                                                       ~
+//  Licensed under the GNU Lesser General Public License v3.0 (the 'License'). You may not use this file except in       ~
+//  compliance with the License. You may obtain a copy of the License at: https://choosealicense.com/licenses/lgpl-3.0   ~
+//  Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on  ~
+//  an 'AS IS' BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the   ~
+//  specific language governing permissions and limitations under the License.                                           ~
+//                                                                                                                       ~
+//  Maintainers:                                                                                                         ~
+//      Wim Bast, Tom Brus                                                                                               ~
+//                                                                                                                       ~
+//  Contributors:                                                                                                        ~
+//      Ronald Krijgsheld ✝, Arjan Kok, Carel Bast                                                                       ~
+// --------------------------------------------------------------------------------------------------------------------- ~
+//  In Memory of Ronald Krijgsheld, 1972 - 2023                                                                          ~
+//      Ronald was suddenly and unexpectedly taken from us. He was not only our long-term colleague and team member      ~
+//      but also our friend. "He will live on in many of the lines of code you see below."                               ~
+//~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+package org.modelingvalue.json;
+
+import java.util.Arrays;
+
+// an identity based set of the objects that ToJson has already written during one render
+// open addressing with linear probing, never looks at equals() or hashCode() of the objects
+class IdentitySeenSet {
+    private static final int INITIAL_CAPACITY  = 64;
+    private static final int MAX_KEPT_CAPACITY = 1 << 16;
+
+    private Object[] table = new Object[INITIAL_CAPACITY];
+    private int      size;
+
+    // returns true if the object was not in the set yet
+    boolean add(Object o) {
+        Object[] t    = table;
+        int      mask = t.length - 1;
+        for (int i = hash(o) & mask; ; i = (i + 1) & mask) {
+            Object e = t[i];
+            if (e == null) {
+                t[i] = o;
+                if (t.length <= 2 * ++size) {
+                    grow();
+                }
+                return true;
+            }
+            if (e == o) {
+                return false;
+            }
+        }
+    }
+
+    boolean contains(Object o) {
+        Object[] t    = table;
+        int      mask = t.length - 1;
+        for (int i = hash(o) & mask; ; i = (i + 1) & mask) {
+            Object e = t[i];
+            if (e == null) {
+                return false;
+            }
+            if (e == o) {
+                return true;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        if (MAX_KEPT_CAPACITY < table.length) {
+            table = new Object[INITIAL_CAPACITY];
+        } else if (0 < size) {
+            Arrays.fill(table, null);
+        }
+        size = 0;
+    }
+
+    private void grow() {
+        Object[] old  = table;
+        Object[] t    = new Object[old.length * 2];
+        int      mask = t.length - 1;
+        for (Object e : old) {
+            if (e != null) {
+                int i = hash(e) & mask;
+                while (t[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                t[i] = e;
+            }
+        }
+        table = t;
+    }
+
+    private static int hash(Object o) {
+        int h = System.identityHashCode(o) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -27,6 +27,10 @@ public class Json {
         return ToJson.toJson(o);
     }
 
+    public static String toPrettyJson(Object o) {
+        return ToJson.toJson(o, Config.pretty());
+    }
+
     public static Object fromJson(String s) {
         return FromJsonListMap.fromJson(s);
     }
@@ -0,0 +1,187 @@
+//~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+//  (C) Copyright 2018-2026 Modeling Value Group B.V. (http://modelingvalue.org)                                         ~
+//                                                                                                                       ~
+//  Licensed under the GNU Lesser General Public License v3.0 (the 'License'). You may not use this file except in       ~
+//  compliance with the License. You may obtain a copy of the License at: https://choosealicense.com/licenses/lgpl-3.0   ~
+//  Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on  ~
+//  an 'AS IS' BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the   ~
+//  specific language governing permissions and limitations under the License.                                           ~
+//                                                                                                                       ~
+//  Maintainers:                                                                                                         ~
+//      Wim Bast, Tom Brus                                                                                               ~
+//                                                                                                                       ~
+//  Contributors:                                                                                                        ~
+//      Ronald Krijgsheld ✝, Arjan Kok, Carel Bast                                                                       ~
+// --------------------------------------------------------------------------------------------------------------------- ~
+//  In Memory of Ronald Krijgsheld, 1972 - 2023                                                                          ~
+//      Ronald was suddenly and unexpectedly taken from us. He was not only our long-term colleague and team member      ~
+//      but also our friend. "He will live on in many of the lines of code you see below."                               ~
+//~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+package org.modelingvalue.json;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// removes all whitespace outside strings, the same as JsonPrettyfier.terse() but without the general prettify machinery;
+// bytes are scanned 8 at a time, which is safe for UTF-8 because multi-byte sequences never contain bytes below 0x80
+public class JsonMinifier {
+    private static final VarHandle LONGS       = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long      ONES        = 0x0101010101010101L;
+    private static final long      HIGHS       = 0x8080808080808080L;
+    private static final long      QUOTES      = ONES * '"';
+    private static final long      BACKSLASHES = ONES * '\\';
+    private static final int       WINDOW_SIZE = Integer.getInteger("JSON.MINIFY_WINDOW", 1 << 20);
+
+    public static String terse(String json) {
+        StringBuilder b       = new StringBuilder(json.length());
+        int           length  = json.length();
+        int           start   = 0;
+        boolean       inQuote = false;
+        for (int i = 0; i < length; i++) {
+            char c = json.charAt(i);
+            if (inQuote) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    inQuote = false;
+                }
+            } else if (c == '"') {
+                inQuote = true;
+            } else if (isWhitespace(c)) {
+                b.append(json, start, i);
+                start = i + 1;
+            }
+        }
+        return b.append(json, start, length).toString();
+    }
+
+    // compacts json[from,to) in place and returns where the minified json ends
+    public static int terse(byte[] json, int from, int to) {
+        return new JsonMinifier().compact(json, from, to);
+    }
+
+    // the input is read in windows into one reused heap buffer, compacted in place and written to the output file
+    public static void terse(Path in, Path out) throws IOException {
+        try (FileChannel inChannel = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel outChannel = FileChannel.open(out, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            JsonMinifier minifier = new JsonMinifier();
+            byte[]       buffer   = new byte[(int) Math.max(1, Math.min(WINDOW_SIZE, inChannel.size()))];
+            ByteBuffer   window   = ByteBuffer.wrap(buffer);
+            for (int length; (length = inChannel.read(window.clear())) != -1; ) {
+                window.position(0).limit(minifier.compact(buffer, 0, length));
+                while (window.hasRemaining()) {
+                    outChannel.write(window);
+                }
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // the state is kept between calls so that a document can be compacted in consecutive pieces
+    private boolean inQuote;
+    private boolean escaped;
+
+    private JsonMinifier() {
+    }
+
+    private int compact(byte[] b, int from, int to) {
+        int w     = from;
+        int start = from;
+        int i     = from;
+        while (i < to) {
+            if (inQuote) {
+                i = endOfString(b, i, to);
+            } else {
+                i = nextSpecial(b, i, to);
+                if (i < to) {
+                    if (b[i] == '"') {
+                        inQuote = true;
+                        i++;
+                    } else if (isWhitespace(b[i])) {
+                        if (w != start) {
+                            System.arraycopy(b, start, b, w, i - start);
+                        }
+                        w += i - start;
+                        do {
+                            i++;
+                        } while (i < to && isWhitespace(b[i]));
+                        start = i;
+                    } else {
+                        i++;
+                    }
+                }
+            }
+        }
+        if (w != start) {
+            System.arraycopy(b, start, b, w, to - start);
+        }
+        return w + to - start;
+    }
+
+    // the position of the first quote or byte below '!' (which includes all whitespace), or to
+    private static int nextSpecial(byte[] b, int i, int to) {
+        for (; i + 8 <= to; i += 8) {
+            long x = (long) LONGS.get(b, i);
+            if ((hasLessThanBang(x) | hasZero(x ^ QUOTES)) != 0) {
+                break;
+            }
+        }
+        for (; i < to; i++) {
+            byte c = b[i];
+            if (c == '"' || (0 <= c && c <= ' ')) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    // the position after the closing quote, or to if the string continues after this piece
+    private int endOfString(byte[] b, int i, int to) {
+        if (escaped) {
+            escaped = false;
+            i++;
+        }
+        while (i < to) {
+            for (; i + 8 <= to; i += 8) {
+                long x = (long) LONGS.get(b, i);
+                if ((hasZero(x ^ QUOTES) | hasZero(x ^ BACKSLASHES)) != 0) {
+                    break;
+                }
+            }
+            // byte by byte through the 8 bytes that had a quote or backslash, then back to 8 at a time
+            for (int end = Math.min(to, i + 8); i < end; i++) {
+                byte c = b[i];
+                if (c == '\\') {
+                    if (to <= i + 1) {
+                        escaped = true;
+                        return to;
+                    }
+                    i++;
+                } else if (c == '"') {
+                    inQuote = false;
+                    return i + 1;
+                }
+            }
+        }
+        return to;
+    }
+
+    private static long hasZero(long x) {
+        return (x - ONES) & ~x & HIGHS;
+    }
+
+    private static long hasLessThanBang(long x) {
+        return (x - ONES * '!') & ~x & HIGHS;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+}
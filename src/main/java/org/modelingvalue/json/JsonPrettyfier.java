@@ -20,10 +20,14 @@
 
 package org.modelingvalue.json;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
 
 public class JsonPrettyfier {
+    private static final int BUFFER_SIZE = 8192;
+
     //////////////////////////////////////////////////////////////////////////////////////////////////////////
     public static String pretty(String json) {
         return prettify(json, "  ", "\n", " ", false);
@@ -34,70 +38,112 @@ public class JsonPrettyfier {
     }
 
     public static String terse(String json) {
-        return prettify(json, null, null, null, true);
+        return JsonMinifier.terse(json);
     }
 
     public static String prettify(String json, String indent, String eol, String afterColon, boolean strict) {
-        return new JsonPrettyfier(json, indent, eol, afterColon, strict).get();
+        JsonPrettyfier p      = new JsonPrettyfier(indent, eol, afterColon, strict, null);
+        char[]         buffer = new char[Math.min(BUFFER_SIZE, json.length())];
+        for (int from = 0; from < json.length(); from += buffer.length) {
+            int to = Math.min(json.length(), from + buffer.length);
+            json.getChars(from, to, buffer, 0);
+            p.feed(buffer, to - from);
+        }
+        p.finish();
+        return p.b.toString();
+    }
+
+    public static void pretty(Reader in, Writer out) throws IOException {
+        prettify(in, out, "  ", "\n", " ", false);
+    }
+
+    public static void prettify(Reader in, Writer out, String indent, String eol, String afterColon, boolean strict) throws IOException {
+        JsonPrettyfier p      = new JsonPrettyfier(indent, eol, afterColon, strict, out);
+        char[]         buffer = new char[BUFFER_SIZE];
+        for (int n = in.read(buffer); 0 <= n; n = in.read(buffer)) {
+            p.feed(buffer, n);
+            p.flushIfFull();
+        }
+        p.finish();
+        p.flush();
+        out.flush();
     }
 
     //////////////////////////////////////////////////////////////////////////////////////////////////////////
-    private final String               indentString;
-    private final String               eolString;
-    private final String               colon;
-    private final boolean              strict;
-    private final char[]               charArray;
-    private final StringBuilder        b           = new StringBuilder();
-    private final Map<Integer, String> indentCache = new HashMap<>();
-    private final boolean              indentEnabled;
-    private       int                  indent;
-
-    private JsonPrettyfier(String json, String indentString, String eolString, String afterColon, boolean strict) {
+    private final String        indentString;
+    private final String        eolString;
+    private final String        colon;
+    private final boolean       strict;
+    private final boolean       indentEnabled;
+    private final Writer        writer;
+    private final StringBuilder b        = new StringBuilder();
+    private final StringBuilder oneLiner = new StringBuilder(); // the content of an opened container that may still be written on one line
+    private       char[]        chars    = new char[0];
+    private       String[]      newLines = new String[16];
+    private       int           indent;
+    private       boolean       inQuote;
+    private       boolean       escaped;
+    private       boolean       pending; // a container was opened and the line break after it has not been written yet
+
+    private JsonPrettyfier(String indentString, String eolString, String afterColon, boolean strict, Writer writer) {
         this.indentString = indentString;
         this.eolString    = eolString;
         this.colon        = ":" + (afterColon == null ? "" : afterColon);
         this.strict       = strict;
-        charArray         = json.toCharArray();
+        this.writer       = writer;
         indentEnabled     = indentString != null;
         if ((indentString == null) != (eolString == null)) {
             throw new RuntimeException("Json: indent and eol must both be set or not set");
         }
     }
 
-
-    private String get() {
-        boolean inQuote    = false;
-        boolean inOneLiner = false;
-        for (int i = 0; i < charArray.length; i++) {
-            char c = charArray[i];
-            if (!inQuote) {
+    // one pass over the input: the one-liner decision only has to wait for the first value in a container
+    private void feed(char[] cs, int length) {
+        for (int i = 0; i < length; i++) {
+            char c = cs[i];
+            if (inQuote) {
+                append(c);
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inQuote = false;
+                }
+            } else {
                 switch (c) {
                 case '"':
-                    b.append(c);
+                    append(c);
                     inQuote = true;
                     break;
                 case '{':
                 case '[':
+                    breakPending();
                     b.append(c);
-                    inOneLiner = !strict && isOneLiner(i + 1);
-                    if (!inOneLiner) {
-                        appendIndent(+1);
-                    }
+                    indent++;
+                    pending = indentEnabled;
                     break;
                 case '}':
                 case ']':
-                    if (!inOneLiner) {
-                        appendIndent(-1);
+                    indent--;
+                    if (pending && !strict) {
+                        b.append(oneLiner);
+                        oneLiner.setLength(0);
+                    } else if (indentEnabled) {
+                        b.append(newLine(indent));
                     }
-                    inOneLiner = false;
+                    pending = false;
                     b.append(c);
                     break;
                 case ',':
+                    breakPending();
                     b.append(c);
-                    appendIndent(0);
+                    if (indentEnabled) {
+                        b.append(newLine(indent));
+                    }
                     break;
                 case ':':
-                    b.append(colon);
+                    append(colon);
                     break;
                 case ' ':
                 case '\r':
@@ -105,76 +151,75 @@ public class JsonPrettyfier {
                 case '\t':
                     break;
                 default:
-                    b.append(c);
-                }
-            } else {
-                switch (c) {
-                case '\\':
-                    b.append(c);
-                    c = charArray[++i];
-                    b.append(c);
-                    break;
-                case '"':
-                    b.append(c);
-                    inQuote = false;
-                    break;
-                default:
-                    b.append(c);
+                    append(c);
                 }
             }
         }
-        return b.toString();
     }
 
-    private boolean isOneLiner(int i) {
-        boolean inQuote = false;
-        for (; i < charArray.length; i++) {
-            char c = charArray[i];
-            if (!inQuote) {
-                switch (c) {
-                case '"':
-                    inQuote = true;
-                    break;
-                case '{':
-                case '[':
-                case ',':
-                    return false;
-                case '}':
-                case ']':
-                    return true;
-                }
-            } else {
-                switch (c) {
-                case '\\':
-                    ++i;
-                    break;
-                case '"':
-                    inQuote = false;
-                    break;
-                }
+    private void append(char c) {
+        if (pending) {
+            if (!strict) {
+                oneLiner.append(c);
+                return;
             }
+            breakPending();
         }
-        return false;
+        b.append(c);
     }
 
-    private void appendIndent(int move) {
-        if (indentEnabled) {
-            indent += move;
-            String toAppend = indentCache.computeIfAbsent(indent, this::makeIndent);
-            String toMatch  = indentCache.computeIfAbsent(indent + 1, this::makeIndent);
-
-            // do not indent if we just had an indent (of one higher)
-            int matchLength = toMatch.length();
-            int preLength   = b.length() - matchLength;
-            if (preLength < 0 || !b.substring(preLength).equals(toMatch)) {
-                b.append(toAppend);
-            } else {
-                b.setLength(b.length() - indentString.length());
+    private void append(String s) {
+        if (pending) {
+            if (!strict) {
+                oneLiner.append(s);
+                return;
+            }
+            breakPending();
+        }
+        b.append(s);
+    }
+
+    // the opened container gets more than one simple value: it is not a one-liner
+    private void breakPending() {
+        if (pending) {
+            pending = false;
+            b.append(newLine(indent));
+            if (!oneLiner.isEmpty()) {
+                b.append(oneLiner);
+                oneLiner.setLength(0);
             }
         }
     }
 
-    private String makeIndent(int i) {
-        return eolString + indentString.repeat(i);
+    private String newLine(int level) {
+        level = Math.max(0, level);
+        if (newLines.length <= level) {
+            newLines = Arrays.copyOf(newLines, Math.max(level + 1, 2 * newLines.length));
+        }
+        String nl = newLines[level];
+        if (nl == null) {
+            newLines[level] = nl = eolString + indentString.repeat(level);
+        }
+        return nl;
+    }
+
+    private void flushIfFull() throws IOException {
+        if (writer != null && BUFFER_SIZE <= b.length()) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        int length = b.length();
+        if (chars.length < length) {
+            chars = new char[length];
+        }
+        b.getChars(0, length, chars, 0);
+        writer.write(chars, 0, length);
+        b.setLength(0);
+    }
+
+    private void finish() {
+        breakPending();
     }
 }
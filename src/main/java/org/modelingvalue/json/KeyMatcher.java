@@ -0,0 +1,66 @@
+//~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+//  (C) Copyright 2018-2026 Modeling Value Group B.V. (http://modelingvalue.org)                                         ~
+//                                                                                                                       ~
+//  Licensed under the GNU Lesser General Public License v3.0 (the 'License'). You may not use this file except in       ~
+//  compliance with the License. You may obtain a copy of the License at: https://choosealicense.com/licenses/lgpl-3.0   ~
+//  Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on  ~
+//  an 'AS IS' BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the   ~
+//  specific language governing permissions and limitations under the License.                                           ~
+//                                                                                                                       ~
+//  Maintainers:                                                                                                         ~
+//      Wim Bast, Tom Brus                                                                                               ~
+//                                                                                                                       ~
+//  Contributors:                                                                                                        ~
+//      Ronald Krijgsheld ✝, Arjan Kok, Carel Bast                                                                       ~
+// --------------------------------------------------------------------------------------------------------------------- ~
+//  In Memory of Ronald Krijgsheld, 1972 - 2023                                                                          ~
+//      Ronald was suddenly and unexpectedly taken from us. He was not only our long-term colleague and team member      ~
+//      but also our friend. "He will live on in many of the lines of code you see below."                               ~
+//~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+package org.modelingvalue.json;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// finds a known property name in the input text without allocating a String for the key
+final class KeyMatcher {
+    private final String[][] byLength;
+
+    static KeyMatcher of(Collection<String> names) {
+        return names.isEmpty() ? null : new KeyMatcher(names);
+    }
+
+    private KeyMatcher(Collection<String> names) {
+        int maxLength = names.stream().mapToInt(String::length).max().orElse(0);
+        List<List<String>> buckets = new ArrayList<>();
+        for (int i = 0; i <= maxLength; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        names.forEach(n -> buckets.get(n.length()).add(n));
+        byLength = buckets.stream().map(l -> l.isEmpty() ? null : l.toArray(String[]::new)).toArray(String[][]::new);
+    }
+
+    int maxLength() {
+        return byLength.length - 1;
+    }
+
+    // returns the known name that equals input[from..to) or null if there is none
+    String match(String input, int from, int to) {
+        int len = to - from;
+        if (len >= byLength.length) {
+            return null;
+        }
+        String[] candidates = byLength[len];
+        if (candidates != null) {
+            char first = len == 0 ? 0 : input.charAt(from);
+            for (String candidate : candidates) {
+                if ((len == 0 || candidate.charAt(0) == first) && input.regionMatches(from, candidate, 0, len)) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+}
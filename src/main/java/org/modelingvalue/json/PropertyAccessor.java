@@ -90,7 +90,7 @@ public final class PropertyAccessor {
         }
     }
 
-    static Map<String, PropertyAccessor> all(Class<?> clazz, Config config) {
+    static Map<String, PropertyAccessor> all(Class<?> clazz, Config.Frozen config) {
         Map<String, Field>  fields  = new HashMap<>();
         Map<String, Method> getters = new HashMap<>();
         Map<String, Method> setters = new HashMap<>();
@@ -113,7 +113,7 @@ public final class PropertyAccessor {
                      .collect(Collectors.toMap(pa -> pa.name, pa -> pa));
     }
 
-    private static String determineName(Field field, Method getter, Method setter, Config config) {
+    private static String determineName(Field field, Method getter, Method setter, Config.Frozen config) {
         if (getter != null) {
             return U.getPropertyName(getter, config);
         }
@@ -139,7 +139,7 @@ public final class PropertyAccessor {
         this.setter = setter;
     }
 
-    private PropertyAccessor(Field field, Method getter, Method setter, Config config) {
+    private PropertyAccessor(Field field, Method getter, Method setter, Config.Frozen config) {
         this(determineName(field, getter, setter, config), field, getter, setter);
     }
 
@@ -155,7 +155,7 @@ public final class PropertyAccessor {
         return field != null || setter != null;
     }
 
-    boolean isId(Config config) {
+    boolean isId(Config.Frozen config) {
         return field != null && config.getAnnotation(field, JsonId.class) != null //
                || getter != null && config.getAnnotation(getter, JsonId.class) != null //
                || setter != null && config.getAnnotation(setter, JsonId.class) != null;
@@ -179,7 +179,7 @@ public final class PropertyAccessor {
         return U.getRawClassOf(type());
     }
 
-    CoercingPropertySetter getCoercingPropertySetter(Config config) {
+    CoercingPropertySetter getCoercingPropertySetter(Config.Frozen config) {
         if (cpsCache == null) {
             cpsCache = CoercingPropertySetter.forProperty(this, config);
         }
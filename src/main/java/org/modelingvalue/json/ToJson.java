@@ -20,15 +20,38 @@
 
 package org.modelingvalue.json;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.lang.reflect.InaccessibleObjectException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntPredicate;
+import java.util.stream.BaseStream;
 
 @SuppressWarnings("unused")
 public class ToJson {
+    private static final int FLUSH_THRESHOLD     = Integer.getInteger("JSON.FLUSH_THRESHOLD", 8192);
+    private static final int PARALLEL_THRESHOLD  = Integer.getInteger("JSON.PARALLEL_THRESHOLD", 10_000);
+    private static final int PARALLEL_CHUNK_SIZE = Integer.getInteger("JSON.PARALLEL_CHUNK_SIZE", 2048);
+
     public static String toJson(Object o) {
         return new ToJson(o).render();
     }
@@ -38,11 +61,22 @@ public class ToJson {
     }
 
     private final Config                   config;
+    private final Config.Frozen            frozen; // all settings are read from this snapshot, taken when the ToJson is made
     private final Object                   root;
-    private final StringBuilder            b            = new StringBuilder();
+    private final StringBuilder            b                               = new StringBuilder();
     private       int                      level;
     private       int                      index;
-    private final Map<Class<?>, ClassInfo> classInfoMap = new HashMap<>();
+    private       Map<Class<?>, ClassInfo> classInfoMap                    = new ConcurrentHashMap<>();
+    private       IdentitySeenSet          seenBefore                      = new IdentitySeenSet();
+    private       ToJsonSink               sink;
+    private       boolean                  parallel;
+    private final Layout                   layout;
+    private       int                      pendingOpen                     = -1; // in pretty mode: where the line break after an opened container goes if it turns out not to be a one-liner
+    private       int                      pendingLevel;
+    private final Set<String>              overriddenHooks                 = OVERRIDDEN_HOOKS.get(getClass());
+    private final boolean                  typeHooksOverridden             = overriddenHooks.contains("isMapType") || overriddenHooks.contains("isIterableType");
+    private final boolean                  introspectionIteratorOverridden = overriddenHooks.contains("getIntrospectionIterator");
+    private final boolean                  keyHooksOverridden              = overriddenHooks.contains("stringFromKey") || overriddenHooks.contains("jsonFromString");
 
     public ToJson(Object o) {
         this(o, new Config());
@@ -51,17 +85,91 @@ public class ToJson {
     public ToJson(Object o, Config config) {
         root        = o;
         this.config = config;
+        frozen      = config.freeze();
+        layout      = Layout.of(frozen);
     }
 
     @SuppressWarnings("unused")
     public String render() {
         b.setLength(0);
-        level = 0;
-        index = 0;
+        sink  = null;
+        level       = 0;
+        index       = 0;
+        parallel    = frozen.parallel();
+        pendingOpen = -1;
+        seenBefore.clear();
         jsonFromAny(root);
         return b.toString();
     }
 
+    public void render(Writer w) throws IOException {
+        try {
+            render(new ToJsonSink.WriterSink(w));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public void render(OutputStream out) throws IOException {
+        render(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
+    public void render(WritableByteChannel channel) throws IOException {
+        render(Channels.newWriter(channel, StandardCharsets.UTF_8));
+    }
+
+    public byte[] renderUtf8() {
+        ToJsonSink.Utf8Sink utf8 = ToJsonSink.Utf8Sink.acquire(false);
+        try {
+            render(utf8);
+            return Arrays.copyOf(utf8.bytes(), utf8.size());
+        } finally {
+            utf8.release();
+        }
+    }
+
+    // the returned buffer wraps an array that is pooled per platform thread: it is only valid until the next
+    // renderUtf8Pooled() on the same thread (other renders use other buffers); on a virtual thread nothing is pooled
+    public ByteBuffer renderUtf8Pooled() {
+        ToJsonSink.Utf8Sink utf8 = ToJsonSink.Utf8Sink.acquire(true);
+        try {
+            render(utf8);
+            return ByteBuffer.wrap(utf8.bytes(), 0, utf8.size());
+        } finally {
+            utf8.release();
+        }
+    }
+
+    private void render(ToJsonSink sink) {
+        b.setLength(0);
+        this.sink = sink;
+        level       = 0;
+        index       = 0;
+        parallel    = frozen.parallel();
+        pendingOpen = -1;
+        seenBefore.clear();
+        try {
+            jsonFromAny(root);
+            sink.drain(b);
+            sink.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            this.sink = null;
+            b.setLength(0);
+        }
+    }
+
+    private void drainIfFull() {
+        if (sink != null && FLUSH_THRESHOLD <= b.length() && pendingOpen < 0) {
+            try {
+                sink.drain(b);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
     @SuppressWarnings("unused")
     public int getLevel() {
         return level;
@@ -82,25 +190,77 @@ public class ToJson {
     }
 
     protected Iterator<Entry<Object, Object>> getIntrospectionIterator(Object o) {
-        return classInfoMap.computeIfAbsent(o.getClass(), c -> new ClassInfo(c, config)).getIntrospectionIterator(o);
+        return getClassInfo(o.getClass()).getIntrospectionIterator(o, seenBefore);
+    }
+
+    private ClassInfo getClassInfo(Class<?> clazz) {
+        return classInfoMap.computeIfAbsent(clazz, c -> new ClassInfo(c, frozen));
     }
 
     @SuppressWarnings("unchecked")
     protected Iterator<Entry<Object, Object>> getMapIterator(Object o) {
-        return ((Map<Object, Object>) o)
-                .entrySet()
-                .stream()
-                .sorted(Comparator.comparing(e -> e.getKey().toString()))
-                .iterator();
+        Map<Object, Object> m = (Map<Object, Object>) o;
+        return switch (frozen.mapOrder()) {
+            case INSERTION -> m.entrySet().iterator();
+            case SORTED_MAP_ORDER -> m instanceof SortedMap || m.size() <= 1 ? m.entrySet().iterator() : sortedOnKeyString(m);
+            case SORTED -> isSortedOnKeyString(m) ? m.entrySet().iterator() : sortedOnKeyString(m);
+        };
+    }
+
+    // a SortedMap in natural order with String keys is already in the order we would sort it in
+    private static boolean isSortedOnKeyString(Map<Object, Object> m) {
+        return m.size() <= 1 || (m instanceof SortedMap<Object, Object> sm && sm.comparator() == null && sm.firstKey() instanceof String);
+    }
+
+    // the key strings are computed once per entry instead of once per comparison
+    private static Iterator<Entry<Object, Object>> sortedOnKeyString(Map<Object, Object> m) {
+        KeyedEntry[] keyed = new KeyedEntry[m.size()];
+        int          i     = 0;
+        for (Entry<Object, Object> e : m.entrySet()) {
+            keyed[i++] = new KeyedEntry(Objects.requireNonNull(e.getKey(), "can not make json: a map contains a null key").toString(), e);
+        }
+        Arrays.sort(keyed, 0, i);
+        return new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < keyed.length;
+            }
+
+            @Override
+            public Entry<Object, Object> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return keyed[next++].entry;
+            }
+        };
+    }
+
+    private record KeyedEntry(String key, Entry<Object, Object> entry) implements Comparable<KeyedEntry> {
+        @Override
+        public int compareTo(KeyedEntry o) {
+            return key.compareTo(o.key);
+        }
     }
 
     @SuppressWarnings("unchecked")
     protected Iterator<Object> getArrayIterator(Object o) {
-        return ((Iterable<Object>) o).iterator();
+        if (o instanceof Iterable) {
+            return ((Iterable<Object>) o).iterator();
+        } else if (o instanceof Iterator) {
+            return (Iterator<Object>) o;
+        } else if (o instanceof BaseStream) {
+            return (Iterator<Object>) ((BaseStream<?, ?>) o).iterator();
+        } else {
+            return Spliterators.iterator((Spliterator<Object>) o);
+        }
     }
 
+    // Iterators, Streams and Spliterators are pulled lazily while rendering, so they can be larger than memory when rendering to a sink
     protected boolean isIterableType(Object o) {
-        return o instanceof Iterable;
+        return o instanceof Iterable || o instanceof Iterator || o instanceof BaseStream || o instanceof Spliterator;
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////////////////
@@ -109,68 +269,159 @@ public class ToJson {
         o = replaceSFO(o);
         if (o == null) {
             b.append("null");
-
-        } else if (isMapType(o)) {
-            jsonFromMap(o);
-        } else if (isIterableType(o)) {
-            jsonFromIterable(o);
-
-        } else if (o instanceof String) {
-            jsonFromString((String) o);
-        } else if (o instanceof Byte) {
-            b.append((byte) o);
-        } else if (o instanceof Short) {
-            b.append((short) o);
-        } else if (o instanceof Integer) {
-            b.append((int) o);
-        } else if (o instanceof Long) {
-            b.append((long) o);
-        } else if (o instanceof Character) {
-            jsonFromCharacter((Character) o);
-        } else if (o instanceof Float) {
-            b.append((float) o);
-        } else if (o instanceof Double) {
-            b.append((double) o);
-        } else if (o instanceof Boolean) {
-            b.append((boolean) o);
-
-        } else if (o instanceof String[]) {
-            jsonFromStringArray((String[]) o);
-        } else if (o instanceof byte[]) {
-            jsonFromByteArray((byte[]) o);
-        } else if (o instanceof short[]) {
-            jsonFromShortArray((short[]) o);
-        } else if (o instanceof int[]) {
-            jsonFromIntArray((int[]) o);
-        } else if (o instanceof long[]) {
-            jsonFromLongArray((long[]) o);
-        } else if (o instanceof char[]) {
-            jsonFromCharArray((char[]) o);
-        } else if (o instanceof float[]) {
-            jsonFromFloatArray((float[]) o);
-        } else if (o instanceof double[]) {
-            jsonFromDoubleArray((double[]) o);
-        } else if (o instanceof boolean[]) {
-            jsonFromBooleanArray((boolean[]) o);
-        } else if (o instanceof Object[]) {
-            jsonFromObjectArray((Object[]) o);
-        } else if (o instanceof BigInteger) {
-            b.append(o);
-        } else if (o instanceof BigDecimal) {
-            b.append(o);
         } else {
-            jsonFromIntrospection(o);
+            Kind kind = KINDS.get(o.getClass());
+            if (typeHooksOverridden) {
+                if (isMapType(o)) {
+                    kind = Kind.MAP;
+                } else if (isIterableType(o)) {
+                    kind = Kind.ITERABLE;
+                } else if (kind == Kind.MAP || kind == Kind.ITERABLE) {
+                    kind = Kind.INTROSPECTION;
+                }
+            }
+            switch (kind) {
+                case MAP -> jsonFromMap(o);
+                case ITERABLE -> jsonFromIterable(o);
+                case STRING -> jsonFromString((String) o);
+                case BYTE -> b.append((byte) o);
+                case SHORT -> b.append((short) o);
+                case INTEGER -> b.append((int) o);
+                case LONG -> b.append((long) o);
+                case CHARACTER -> jsonFromCharacter((Character) o);
+                case FLOAT -> b.append((float) o);
+                case DOUBLE -> b.append((double) o);
+                case BOOLEAN -> b.append((boolean) o);
+                case STRING_ARRAY -> jsonFromStringArray((String[]) o);
+                case BYTE_ARRAY -> jsonFromByteArray((byte[]) o);
+                case SHORT_ARRAY -> jsonFromShortArray((short[]) o);
+                case INT_ARRAY -> jsonFromIntArray((int[]) o);
+                case LONG_ARRAY -> jsonFromLongArray((long[]) o);
+                case CHAR_ARRAY -> jsonFromCharArray((char[]) o);
+                case FLOAT_ARRAY -> jsonFromFloatArray((float[]) o);
+                case DOUBLE_ARRAY -> jsonFromDoubleArray((double[]) o);
+                case BOOLEAN_ARRAY -> jsonFromBooleanArray((boolean[]) o);
+                case OBJECT_ARRAY -> jsonFromObjectArray((Object[]) o);
+                case NUMBER -> b.append(o);
+                case INTROSPECTION -> jsonFromIntrospection(o);
+            }
+        }
+        drainIfFull();
+    }
+
+    private enum Kind {
+        MAP, ITERABLE,
+        STRING, BYTE, SHORT, INTEGER, LONG, CHARACTER, FLOAT, DOUBLE, BOOLEAN,
+        STRING_ARRAY, BYTE_ARRAY, SHORT_ARRAY, INT_ARRAY, LONG_ARRAY, CHAR_ARRAY, FLOAT_ARRAY, DOUBLE_ARRAY, BOOLEAN_ARRAY, OBJECT_ARRAY,
+        NUMBER, INTROSPECTION;
+
+        static Kind of(Class<?> c) {
+            if (Map.class.isAssignableFrom(c)) {
+                return MAP;
+            } else if (Iterable.class.isAssignableFrom(c) || Iterator.class.isAssignableFrom(c) || BaseStream.class.isAssignableFrom(c) || Spliterator.class.isAssignableFrom(c)) {
+                return ITERABLE;
+            } else if (c == String.class) {
+                return STRING;
+            } else if (c == Byte.class) {
+                return BYTE;
+            } else if (c == Short.class) {
+                return SHORT;
+            } else if (c == Integer.class) {
+                return INTEGER;
+            } else if (c == Long.class) {
+                return LONG;
+            } else if (c == Character.class) {
+                return CHARACTER;
+            } else if (c == Float.class) {
+                return FLOAT;
+            } else if (c == Double.class) {
+                return DOUBLE;
+            } else if (c == Boolean.class) {
+                return BOOLEAN;
+            } else if (c == String[].class) {
+                return STRING_ARRAY;
+            } else if (c == byte[].class) {
+                return BYTE_ARRAY;
+            } else if (c == short[].class) {
+                return SHORT_ARRAY;
+            } else if (c == int[].class) {
+                return INT_ARRAY;
+            } else if (c == long[].class) {
+                return LONG_ARRAY;
+            } else if (c == char[].class) {
+                return CHAR_ARRAY;
+            } else if (c == float[].class) {
+                return FLOAT_ARRAY;
+            } else if (c == double[].class) {
+                return DOUBLE_ARRAY;
+            } else if (c == boolean[].class) {
+                return BOOLEAN_ARRAY;
+            } else if (c.isArray() && !c.getComponentType().isPrimitive()) {
+                return OBJECT_ARRAY;
+            } else if (BigInteger.class.isAssignableFrom(c) || BigDecimal.class.isAssignableFrom(c)) {
+                return NUMBER;
+            } else {
+                return INTROSPECTION;
+            }
+        }
+    }
+
+    private static final ClassValue<Kind> KINDS = new ClassValue<>() {
+        @Override
+        protected Kind computeValue(Class<?> c) {
+            return Kind.of(c);
+        }
+    };
+
+    // the names of the ToJson methods that a ToJson subclass overrides
+    static final ClassValue<Set<String>> OVERRIDDEN_HOOKS = new ClassValue<>() {
+        @Override
+        protected Set<String> computeValue(Class<?> c) {
+            Set<String> hooks = new HashSet<>();
+            for (; c != ToJson.class; c = c.getSuperclass()) {
+                for (Method m : c.getDeclaredMethods()) {
+                    if (!Modifier.isStatic(m.getModifiers()) && overridesToJson(m)) {
+                        hooks.add(m.getName());
+                    }
+                }
+            }
+            return Set.copyOf(hooks);
+        }
+    };
+
+    // only the exact parameter types override, a method with the same name and other parameters is an overload
+    private static boolean overridesToJson(Method m) {
+        try {
+            int modifiers = ToJson.class.getDeclaredMethod(m.getName(), m.getParameterTypes()).getModifiers();
+            return !Modifier.isPrivate(modifiers) && !Modifier.isStatic(modifiers);
+        } catch (NoSuchMethodException e) {
+            return false;
         }
     }
 
     private Object replaceSFO(Object o) {
-        Class<?> clazz;
-        if (!config.ignoreSFOs//
-                && o != null//
-                && !(clazz = o.getClass()).isPrimitive()//
-                && clazz.getSuperclass() == Object.class//
-                && U.unbox(clazz) == clazz//
-        ) {
+        if (!frozen.ignoreSFOs() && o != null) {
+            MethodHandle sfoGetter = SFO_GETTERS.get(o.getClass());
+            if (sfoGetter != null) {
+                try {
+                    o = (Object) sfoGetter.invokeExact(o);
+                } catch (RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new RuntimeException("problem getting the field of SFO " + o.getClass().getName(), e);
+                }
+            }
+        }
+        return o;
+    }
+
+    // the getter of the single field of a Single-Field-Object class, or null if the class is not an SFO
+    private static final ClassValue<MethodHandle> SFO_GETTERS = new ClassValue<>() {
+        @Override
+        protected MethodHandle computeValue(Class<?> clazz) {
+            if (clazz.isPrimitive() || clazz.getSuperclass() != Object.class || U.unbox(clazz) != clazz) {
+                return null;
+            }
             Field[]          fields = clazz.getDeclaredFields();
             Constructor<?>[] constructors;
             if (fields.length == 1//
@@ -180,17 +431,75 @@ public class ToJson {
             ) {
                 try {
                     fields[0].setAccessible(true);
-                    o = fields[0].get(o);
-                } catch (IllegalAccessException e) {
-                    // skip the SFO
+                    return MethodHandles.lookup().unreflectGetter(fields[0]).asType(MethodType.methodType(Object.class, Object.class));
+                } catch (IllegalAccessException | InaccessibleObjectException | SecurityException e) {
+                    // not usable as an SFO
                 }
             }
+            return null;
         }
-        return o;
-    }
+    };
 
     private void jsonFromIntrospection(Object o) {
-        jsonFromIterator(getIntrospectionIterator(o));
+        if (introspectionIteratorOverridden) {
+            jsonFromIterator(getIntrospectionIterator(o));
+        } else {
+            jsonFromClassInfo(getClassInfo(o.getClass()), o);
+        }
+    }
+
+    private void jsonFromClassInfo(ClassInfo classInfo, Object o) {
+        if (keyHooksOverridden) {
+            jsonFromClassInfoKeyHooked(classInfo, o);
+            return;
+        }
+        open('{');
+        boolean first = true;
+        level++;
+        int savedIndex = index;
+        index = 0;
+        if (classInfo.firstOccurrence(o, seenBefore)) {
+            // first time, render the whole thing:
+            if (frozen.includeClassNameInIntrospection()) {
+                first = jsonFromEntry(first, classInfo.getClassNameKey(), classInfo.getClazz().getName());
+            }
+            PropertyAccessor[] properties = classInfo.getProperties();
+            char[][]           keys       = classInfo.getPropertyKeys();
+            for (int i = 0; i < properties.length; i++) {
+                first = jsonFromEntry(first, keys[i], properties[i].get(o));
+            }
+        } else {
+            // this object was rendered before, only render the idProperty now:
+            jsonFromEntry(first, classInfo.getPropertyKeys()[0], classInfo.getIdProperty().get(o));
+        }
+        index = savedIndex;
+        level--;
+        close('}');
+    }
+
+    // the keys have to pass through the overridden stringFromKey() or jsonFromString() here
+    private void jsonFromClassInfoKeyHooked(ClassInfo classInfo, Object o) {
+        open('{');
+        boolean first = true;
+        level++;
+        int savedIndex = index;
+        index = 0;
+        if (classInfo.firstOccurrence(o, seenBefore)) {
+            // first time, render the whole thing:
+            if (frozen.includeClassNameInIntrospection()) {
+                first = jsonFromEntry(first, U.CLASS_NAME_FIELD_NAME, classInfo.getClazz().getName());
+            }
+            for (PropertyAccessor pa : classInfo.getProperties()) {
+                first = jsonFromEntry(first, pa.name(), pa.get(o));
+            }
+        } else {
+            // this object was rendered before, only render the idProperty now:
+            PropertyAccessor idProperty = classInfo.getIdProperty();
+            jsonFromEntry(first, idProperty.name(), idProperty.get(o));
+        }
+        index = savedIndex;
+        level--;
+        close('}');
     }
 
     protected void jsonFromMap(Object o) {
@@ -198,26 +507,53 @@ public class ToJson {
     }
 
     private void jsonFromIterator(Iterator<Entry<Object, Object>> it) {
-        b.append('{');
-        String sep = "";
+        open('{');
+        boolean first = true;
         level++;
         int savedIndex = index;
         index = 0;
         while (it.hasNext()) {
-            Entry<Object, Object> e     = it.next();
-            Object                value = e.getValue();
-            if (value != null || !config.ignoreNullValues) {
-                b.append(sep);
-                sep = ",";
-                jsonFromString(stringFromKey(e.getKey()));
-                b.append(":");
-                jsonFromAny(value);
-            }
-            index++;
+            Entry<Object, Object> e = it.next();
+            first = jsonFromEntry(first, e.getKey(), e.getValue());
         }
         index = savedIndex;
         level--;
-        b.append('}');
+        close('}');
+    }
+
+    // returns whether the next entry is still the first one written
+    private boolean jsonFromEntry(boolean first, Object key, Object value) {
+        if (value != null || !frozen.ignoreNullValues()) {
+            if (!first) {
+                separate(",");
+            }
+            jsonFromString(stringFromKey(key));
+            b.append(layout == null ? ":" : layout.colon);
+            jsonFromAny(value);
+            first = false;
+        }
+        index++;
+        return first;
+    }
+
+    // the key is a pre-encoded ',"name":' fragment, the leading comma is skipped for the first entry
+    private boolean jsonFromEntry(boolean first, char[] key, Object value) {
+        if (value != null || !frozen.ignoreNullValues()) {
+            if (layout != null) {
+                if (!first) {
+                    separate(",");
+                }
+                b.append(key, 1, key.length - 2).append(layout.colon);
+            } else if (first) {
+                b.append(key, 1, key.length - 1);
+            } else {
+                b.append(key);
+            }
+            jsonFromAny(value);
+            first = false;
+        }
+        index++;
+        return first;
     }
 
     protected String stringFromKey(Object key) {
@@ -225,196 +561,447 @@ public class ToJson {
     }
 
     protected void jsonFromIterable(Object o) {
-        b.append('[');
+        if (o instanceof Collection<?> c && inParallel(c.size()) && !overriddenHooks.contains("getArrayIterator")) {
+            Object[] elements = c.toArray();
+            if (jsonFromChunks(elements.length, frozen.ignoreNullValues() ? i -> elements[i] == null : null, (w, i) -> w.jsonFromAny(elements[i]))) {
+                return;
+            }
+        }
+        open('[');
         Iterator<Object> it  = getArrayIterator(o);
         String           sep = "";
         level++;
         int savedIndex = index;
         index = 0;
-        while (it.hasNext()) {
-            Object value = it.next();
-            if (value != null || !config.ignoreNullValues) {
-                b.append(sep);
-                sep = ",";
-                jsonFromAny(value);
+        try {
+            while (it.hasNext()) {
+                Object value = it.next();
+                if (value != null || !frozen.ignoreNullValues()) {
+                    separate(sep);
+                    sep = ",";
+                    jsonFromAny(value);
+                }
+                index++;
+            }
+        } finally {
+            if (o instanceof BaseStream<?, ?> stream) {
+                // releases whatever the stream was reading from, like a database cursor
+                stream.close();
             }
-            index++;
         }
         index = savedIndex;
         level--;
-        b.append(']');
+        close(']');
     }
 
     protected void jsonFromByteArray(byte[] o) {
-        b.append('[');
+        if (inParallel(o.length) && jsonFromChunks(o.length, null, (w, i) -> w.b.append(o[i]))) {
+            return;
+        }
+        open('[');
         String sep = "";
         level++;
         int savedIndex = index;
         index = 0;
         for (byte oo : o) {
-            b.append(sep);
+            separate(sep);
             sep = ",";
             b.append(oo);
             index++;
+            drainIfFull();
         }
         index = savedIndex;
         level--;
-        b.append(']');
+        close(']');
     }
 
     protected void jsonFromBooleanArray(boolean[] o) {
-        b.append('[');
+        if (inParallel(o.length) && jsonFromChunks(o.length, null, (w, i) -> w.b.append(o[i]))) {
+            return;
+        }
+        open('[');
         String sep = "";
         level++;
         int savedIndex = index;
         index = 0;
         for (boolean oo : o) {
-            b.append(sep);
+            separate(sep);
             sep = ",";
             b.append(oo);
             index++;
+            drainIfFull();
         }
         index = savedIndex;
         level--;
-        b.append(']');
+        close(']');
     }
 
     protected void jsonFromObjectArray(Object[] o) {
-        b.append('[');
+        if (inParallel(o.length) && jsonFromChunks(o.length, null, (w, i) -> w.jsonFromAny(o[i]))) {
+            return;
+        }
+        open('[');
         String sep = "";
         level++;
         int savedIndex = index;
         index = 0;
         for (Object oo : o) {
-            b.append(sep);
+            separate(sep);
             sep = ",";
             jsonFromAny(oo);
             index++;
         }
         index = savedIndex;
         level--;
-        b.append(']');
+        close(']');
     }
 
     protected void jsonFromDoubleArray(double[] o) {
-        b.append('[');
+        if (inParallel(o.length) && jsonFromChunks(o.length, null, (w, i) -> w.b.append(o[i]))) {
+            return;
+        }
+        open('[');
         String sep = "";
         level++;
         int savedIndex = index;
         index = 0;
         for (double oo : o) {
-            b.append(sep);
+            separate(sep);
             sep = ",";
             b.append(oo);
             index++;
+            drainIfFull();
         }
         index = savedIndex;
         level--;
-        b.append(']');
+        close(']');
     }
 
     protected void jsonFromFloatArray(float[] o) {
-        b.append('[');
+        if (inParallel(o.length) && jsonFromChunks(o.length, null, (w, i) -> w.b.append(o[i]))) {
+            return;
+        }
+        open('[');
         String sep = "";
         level++;
         int savedIndex = index;
         index = 0;
         for (float oo : o) {
-            b.append(sep);
+            separate(sep);
             sep = ",";
             b.append(oo);
             index++;
+            drainIfFull();
         }
         index = savedIndex;
         level--;
-        b.append(']');
+        close(']');
     }
 
     protected void jsonFromCharArray(char[] o) {
-        b.append('[');
+        if (inParallel(o.length) && jsonFromChunks(o.length, null, (w, i) -> w.jsonFromCharacter(o[i]))) {
+            return;
+        }
+        open('[');
         String sep = "";
         level++;
         int savedIndex = index;
         index = 0;
         for (char oo : o) {
-            b.append(sep);
+            separate(sep);
             sep = ",";
             jsonFromCharacter(oo);
             index++;
+            drainIfFull();
         }
         index = savedIndex;
         level--;
-        b.append(']');
+        close(']');
     }
 
     protected void jsonFromLongArray(long[] o) {
-        b.append('[');
+        if (inParallel(o.length) && jsonFromChunks(o.length, null, (w, i) -> w.b.append(o[i]))) {
+            return;
+        }
+        open('[');
         String sep = "";
         level++;
         int savedIndex = index;
         index = 0;
         for (long oo : o) {
-            b.append(sep);
+            separate(sep);
             sep = ",";
             b.append(oo);
             index++;
+            drainIfFull();
         }
         index = savedIndex;
         level--;
-        b.append(']');
+        close(']');
     }
 
     protected void jsonFromShortArray(short[] o) {
-        b.append('[');
+        if (inParallel(o.length) && jsonFromChunks(o.length, null, (w, i) -> w.b.append(o[i]))) {
+            return;
+        }
+        open('[');
         String sep = "";
         level++;
         int savedIndex = index;
         index = 0;
         for (short oo : o) {
-            b.append(sep);
+            separate(sep);
             sep = ",";
             b.append(oo);
             index++;
+            drainIfFull();
         }
         index = savedIndex;
         level--;
-        b.append(']');
+        close(']');
     }
 
     protected void jsonFromIntArray(int[] o) {
-        b.append('[');
+        if (inParallel(o.length) && jsonFromChunks(o.length, null, (w, i) -> w.b.append(o[i]))) {
+            return;
+        }
+        open('[');
         String sep = "";
         level++;
         int savedIndex = index;
         index = 0;
         for (int oo : o) {
-            b.append(sep);
+            separate(sep);
             sep = ",";
             b.append(oo);
             index++;
+            drainIfFull();
         }
         index = savedIndex;
         level--;
-        b.append(']');
+        close(']');
     }
 
     protected void jsonFromStringArray(String[] o) {
-        b.append('[');
+        if (inParallel(o.length) && jsonFromChunks(o.length, null, (w, i) -> w.jsonFromString(o[i]))) {
+            return;
+        }
+        open('[');
         String sep = "";
         level++;
         int savedIndex = index;
         index = 0;
         for (String oo : o) {
-            b.append(sep);
+            separate(sep);
             sep = ",";
             jsonFromString(oo);
             index++;
+            drainIfFull();
         }
         index = savedIndex;
         level--;
-        b.append(']');
+        close(']');
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+    // a fresh ToJson with the same hooks as this one, used to render one chunk of a large array in parallel mode;
+    // subclasses that want to render in parallel return a new instance of themselves, null means: render sequentially
+    protected ToJson newWorker() {
+        return getClass() == ToJson.class ? new ToJson(null, config) : null;
+    }
+
+    private boolean inParallel(int length) {
+        return parallel && PARALLEL_THRESHOLD <= length;
+    }
+
+    @FunctionalInterface
+    private interface ElementWriter {
+        void write(ToJson worker, int i);
+    }
+
+    // workers can not know if an object with an id was already written by an earlier chunk, so they give up on those
+    private static final class IdInChunk extends RuntimeException {
+        private static final long      serialVersionUID = 1L;
+        private static final IdInChunk INSTANCE         = new IdInChunk();
+
+        private IdInChunk() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final IdentitySeenSet NO_IDS_IN_CHUNKS = new IdentitySeenSet() {
+        @Override
+        boolean add(Object o) {
+            throw IdInChunk.INSTANCE;
+        }
+    };
+
+    // renders the elements in chunks on the common ForkJoinPool, each chunk in its own worker with its own buffer,
+    // and joins the buffers in order; returns false if the array still has to be rendered sequentially
+    private boolean jsonFromChunks(int length, IntPredicate skip, ElementWriter writer) {
+        List<ToJson> workers = new ArrayList<>();
+        for (int from = 0; from < length; from += PARALLEL_CHUNK_SIZE) {
+            ToJson worker = newWorker();
+            if (worker == null) {
+                parallel = false;
+                return false;
+            }
+            worker.classInfoMap = classInfoMap;
+            worker.seenBefore   = NO_IDS_IN_CHUNKS;
+            worker.parallel     = true;
+            worker.level        = level + 1;
+            worker.index        = from;
+            if (layout != null) {
+                // the worker does not know if it is the first chunk: it records the line break it needs at its start, like after an open
+                worker.pendingOpen  = 0;
+                worker.pendingLevel = level + 1;
+            }
+            workers.add(worker);
+        }
+        List<ForkJoinTask<Boolean>> tasks = new ArrayList<>(workers.size());
+        for (int c = 0; c < workers.size(); c++) {
+            ToJson worker = workers.get(c);
+            int    from   = c * PARALLEL_CHUNK_SIZE;
+            int    to     = Math.min(length, from + PARALLEL_CHUNK_SIZE);
+            tasks.add(ForkJoinTask.adapt(() -> worker.jsonFromChunk(from, to, skip, writer)).fork());
+        }
+        boolean complete = true;
+        for (ForkJoinTask<Boolean> task : tasks) {
+            complete &= task.join();
+        }
+        if (!complete) {
+            parallel = false;
+            return false;
+        }
+        open('[');
+        level++;
+        boolean first = true;
+        for (ToJson worker : workers) {
+            if (!worker.b.isEmpty()) {
+                // a worker that broke its first line already starts with the line break
+                boolean broken = worker.pendingOpen < 0;
+                if (!first) {
+                    b.append(',');
+                    commitPendingOpen();
+                    if (!broken) {
+                        b.append(layout.newLine(level));
+                    }
+                } else if (broken) {
+                    pendingOpen = -1;
+                }
+                first = false;
+                b.append(worker.b);
+                drainIfFull();
+            }
+        }
+        level--;
+        close(']');
+        return true;
+    }
+
+    private boolean jsonFromChunk(int from, int to, IntPredicate skip, ElementWriter writer) {
+        try {
+            boolean first = true;
+            for (int i = from; i < to; i++) {
+                if (skip == null || !skip.test(i)) {
+                    if (!first) {
+                        separate(",");
+                    }
+                    first = false;
+                    writer.write(this, i);
+                }
+                index++;
+            }
+            return true;
+        } catch (IdInChunk e) {
+            return false;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
+    // the pretty printing settings, the same as JsonPrettyfier.prettify() takes them
+    private static final class Layout {
+        static Layout of(Config.Frozen config) {
+            if (config.prettyIndent() == null && config.prettyEol() == null && config.prettyAfterColon() == null) {
+                return null;
+            }
+            if ((config.prettyIndent() == null) != (config.prettyEol() == null)) {
+                throw new RuntimeException("Json: indent and eol must both be set or not set");
+            }
+            return new Layout(config);
+        }
+
+        private final String   indent;
+        private final String   eol;
+        private final String   colon;
+        private final boolean  strict;
+        private       String[] newLines = new String[8];
+
+        private Layout(Config.Frozen config) {
+            indent = config.prettyIndent();
+            eol    = config.prettyEol();
+            colon  = ":" + (config.prettyAfterColon() == null ? "" : config.prettyAfterColon());
+            strict = config.prettyStrict();
+        }
+
+        String newLine(int level) {
+            if (eol == null) {
+                return "";
+            }
+            if (newLines.length <= level) {
+                newLines = Arrays.copyOf(newLines, Math.max(level + 1, 2 * newLines.length));
+            }
+            String nl = newLines[level];
+            if (nl == null) {
+                newLines[level] = nl = eol + indent.repeat(level);
+            }
+            return nl;
+        }
+    }
+
+    // called before level is raised for the content
+    private void open(char c) {
+        b.append(c);
+        if (layout != null) {
+            commitPendingOpen();
+            pendingOpen  = b.length();
+            pendingLevel = level + 1;
+        }
+    }
+
+    // called after level is lowered again
+    private void close(char c) {
+        if (layout != null) {
+            if (pendingOpen < 0) {
+                b.append(layout.newLine(level));
+            } else if (layout.strict) {
+                if (pendingOpen < b.length()) {
+                    commitPendingOpen();
+                }
+                b.append(layout.newLine(level));
+            }
+            pendingOpen = -1;
+        }
+        b.append(c);
+    }
+
+    // the container that is still pending has a separator or a nested container, so it is not a one-liner
+    private void commitPendingOpen() {
+        if (0 <= pendingOpen) {
+            b.insert(pendingOpen, layout.newLine(pendingLevel));
+            pendingOpen = -1;
+        }
+    }
+
+    private void separate(String sep) {
+        b.append(sep);
+        if (layout != null && !sep.isEmpty()) {
+            commitPendingOpen();
+            b.append(layout.newLine(level));
+        }
     }
 
+    ///////////////////////////////////////////////////////////////////////////////////////////////////
     protected void jsonFromCharacter(char o) {
         b.append('"');
         appendStringCharacter(o);
@@ -425,53 +1012,67 @@ public class ToJson {
         if (o == null) {
             b.append("\"null\"");
         } else {
-            b.append('"');
-            final int length = o.length();
-            for (int i = 0; i < length; i++) {
-                appendStringCharacter(o.charAt(i));
-            }
-            b.append('"');
+            appendQuoted(b, o);
         }
     }
 
     private void appendStringCharacter(char ch) {
-        //noinspection CommentedOutCode
-        switch (ch) {
-            case '"':
-                b.append("\\\"");
-                break;
-            // JSON allows escaping '/' but it does not require it to be escaped:
-            //        case '/':
-            //            b.append("\\/");
-            //            break;
-            case '\\':
-                b.append("\\\\");
-                break;
-            case '\b':
-                b.append("\\b");
-                break;
-            case '\f':
-                b.append("\\f");
-                break;
-            case '\n':
-                b.append("\\n");
-                break;
-            case '\r':
-                b.append("\\r");
-                break;
-            case '\t':
-                b.append("\\t");
-                break;
-            default:
-                // see: https://www.unicode.org
-                if (ch <= '\u001F' || ('\u007F' <= ch && ch <= '\u009F') || ('\u2000' <= ch && ch <= '\u20FF')) {
-                    String ss = Integer.toHexString(ch);
-                    b.append("\\u");
-                    b.append("0".repeat(4 - ss.length()));
-                    b.append(ss.toUpperCase());
-                } else {
-                    b.append(ch);
+        if (needsEscape(ch)) {
+            appendEscape(b, ch);
+        } else {
+            b.append(ch);
+        }
+    }
+
+    static void appendQuoted(StringBuilder b, String o) {
+        b.append('"');
+        final int length = o.length();
+        int       start  = 0;
+        for (int i = 0; i < length; i++) {
+            char ch = o.charAt(i);
+            if (needsEscape(ch)) {
+                if (start < i) {
+                    b.append(o, start, i);
                 }
+                appendEscape(b, ch);
+                start = i + 1;
+            }
+        }
+        if (start < length) {
+            b.append(o, start, length);
+        }
+        b.append('"');
+    }
+
+    // see: https://www.unicode.org
+    // JSON allows escaping '/' but it does not require it to be escaped, so we don't
+    private static final String[] ESCAPES = new String[0xA0];
+    private static final char[]   HEX     = "0123456789ABCDEF".toCharArray();
+
+    static {
+        for (char ch = 0; ch < ESCAPES.length; ch++) {
+            if (ch <= '\u001F' || '\u007F' <= ch) {
+                ESCAPES[ch] = "\\u00" + HEX[ch >> 4] + HEX[ch & 0xF];
+            }
+        }
+        ESCAPES['"']  = "\\\"";
+        ESCAPES['\\'] = "\\\\";
+        ESCAPES['\b'] = "\\b";
+        ESCAPES['\f'] = "\\f";
+        ESCAPES['\n'] = "\\n";
+        ESCAPES['\r'] = "\\r";
+        ESCAPES['\t'] = "\\t";
+    }
+
+    private static boolean needsEscape(char ch) {
+        return ch < ESCAPES.length ? ESCAPES[ch] != null : '\u2000' <= ch && ch <= '\u20FF';
+    }
+
+    private static void appendEscape(StringBuilder b, char ch) {
+        if (ch < ESCAPES.length) {
+            b.append(ESCAPES[ch]);
+        } else {
+            b.append("\\u").append(HEX[ch >> 12]).append(HEX[(ch >> 8) & 0xF]).append(HEX[(ch >> 4) & 0xF]).append(HEX[ch & 0xF]);
         }
     }
 }
@@ -0,0 +1,191 @@
+//~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+//  (C) Copyright 2018-2026 Modeling Value Group B.V. (http://modelingvalue.org)                                         ~
+//                                                                                                                       ~
+//  Licensed under the GNU Lesser General Public License v3.0 (the 'License'). You may not use this file except in       ~
+//  compliance with the License. You may obtain a copy of the License at: https://choosealicense.com/licenses/lgpl-3.0   ~
+//  Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on  ~
+//  an 'AS IS' BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the   ~
+//  specific language governing permissions and limitations under the License.                                           ~
+//                                                                                                                       ~
+//  Maintainers:                                                                                                         ~
+//      Wim Bast, Tom Brus                                                                                               ~
+//                                                                                                                       ~
+//  Contributors:                                                                                                        ~
+//      Ronald Krijgsheld ✝, Arjan Kok, Carel Bast                                                                       ~
+// --------------------------------------------------------------------------------------------------------------------- ~
+//  In Memory of Ronald Krijgsheld, 1972 - 2023                                                                          ~
+//      Ronald was suddenly and unexpectedly taken from us. He was not only our long-term colleague and team member      ~
+//      but also our friend. "He will live on in many of the lines of code you see below."                               ~
+//~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+package org.modelingvalue.json;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+// the target that ToJson drains its bounded buffer into while rendering
+abstract class ToJsonSink {
+    abstract void drain(StringBuilder b) throws IOException;
+
+    void flush() throws IOException {
+    }
+
+    static class WriterSink extends ToJsonSink {
+        private final Writer w;
+        private       char[] chars = new char[0];
+
+        WriterSink(Writer w) {
+            this.w = w;
+        }
+
+        @Override
+        void drain(StringBuilder b) throws IOException {
+            int length = b.length();
+            if (chars.length < length) {
+                chars = new char[length];
+            }
+            b.getChars(0, length, chars, 0);
+            w.write(chars, 0, length);
+            b.setLength(0);
+        }
+
+        @Override
+        void flush() throws IOException {
+            w.flush();
+        }
+    }
+
+    // encodes the drained chars into a growable UTF-8 byte[] that is reused per platform thread; the rendering itself
+    // still goes through the char buffer of ToJson, what this saves is the String and the getBytes() copy of the whole document
+    static class Utf8Sink extends ToJsonSink {
+        private static final int                   INITIAL_SIZE  = 8192;
+        private static final int                   MAX_KEPT_SIZE = Integer.getInteger("JSON.MAX_POOLED_BUFFER", 1 << 20);
+        private static final ThreadLocal<Utf8Sink> SCRATCH       = ThreadLocal.withInitial(Utf8Sink::new); // the bytes are copied out
+        private static final ThreadLocal<Utf8Sink> HANDED_OUT    = ThreadLocal.withInitial(Utf8Sink::new); // the buffer itself is returned
+        private static final byte[]                HEX           = "0123456789ABCDEF".getBytes();
+
+        static Utf8Sink acquire(boolean handedOut) {
+            Utf8Sink sink;
+            if (Thread.currentThread().isVirtual()) {
+                // virtual threads are not reused, so a per-thread buffer would never be used again
+                sink = new Utf8Sink();
+            } else {
+                sink = (handedOut ? HANDED_OUT : SCRATCH).get();
+            }
+            if (sink.inUse) {
+                // a render that is nested in another render on the same thread gets its own buffer
+                sink = new Utf8Sink();
+            }
+            sink.inUse         = true;
+            sink.size          = 0;
+            sink.highSurrogate = 0;
+            if (MAX_KEPT_SIZE < sink.bytes.length) {
+                sink.bytes = new byte[INITIAL_SIZE];
+            }
+            return sink;
+        }
+
+        private byte[]  bytes = new byte[INITIAL_SIZE];
+        private char[]  chars = new char[0];
+        private int     size;
+        private boolean inUse;
+        private char    highSurrogate; // the last char of the previous drain, when it may be the first half of a pair
+
+        void release() {
+            inUse = false;
+        }
+
+        byte[] bytes() {
+            return bytes;
+        }
+
+        int size() {
+            return size;
+        }
+
+        @Override
+        void drain(StringBuilder b) {
+            int length = b.length();
+            if (chars.length < length) {
+                chars = new char[length];
+            }
+            b.getChars(0, length, chars, 0);
+            b.setLength(0);
+            ensure(3 * length + 6);
+            char[] cs = chars;
+            byte[] bs = bytes;
+            int    p  = size;
+            int    i  = 0;
+            if (highSurrogate != 0) {
+                if (0 < length && Character.isLowSurrogate(cs[0])) {
+                    p = encode(bs, p, Character.toCodePoint(highSurrogate, cs[i++]));
+                } else {
+                    p = escape(bs, p, highSurrogate);
+                }
+                highSurrogate = 0;
+            }
+            while (i < length) {
+                // most json is ascii, that is copied without any further checks
+                for (char c; i < length && (c = cs[i]) < 0x80; i++) {
+                    bs[p++] = (byte) c;
+                }
+                if (i < length) {
+                    char c = cs[i++];
+                    if (c < 0x800) {
+                        bs[p++] = (byte) (0xC0 | (c >> 6));
+                        bs[p++] = (byte) (0x80 | (c & 0x3F));
+                    } else if (!Character.isSurrogate(c)) {
+                        bs[p++] = (byte) (0xE0 | (c >> 12));
+                        bs[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                        bs[p++] = (byte) (0x80 | (c & 0x3F));
+                    } else if (Character.isHighSurrogate(c) && i < length && Character.isLowSurrogate(cs[i])) {
+                        p = encode(bs, p, Character.toCodePoint(c, cs[i++]));
+                    } else if (Character.isHighSurrogate(c) && i == length) {
+                        highSurrogate = c;
+                    } else {
+                        // a lone surrogate has no UTF-8 encoding, it can only be in a string value so it is escaped there
+                        size = p;
+                        ensure(3 * (length - i) + 6);
+                        bs = bytes;
+                        p  = escape(bs, p, c);
+                    }
+                }
+            }
+            size = p;
+        }
+
+        @Override
+        void flush() {
+            if (highSurrogate != 0) {
+                ensure(6);
+                size          = escape(bytes, size, highSurrogate);
+                highSurrogate = 0;
+            }
+        }
+
+        private void ensure(int extra) {
+            if (bytes.length < size + extra) {
+                bytes = Arrays.copyOf(bytes, Math.max(size + extra, 2 * bytes.length));
+            }
+        }
+
+        private static int encode(byte[] bs, int p, int cp) {
+            bs[p++] = (byte) (0xF0 | (cp >> 18));
+            bs[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+            bs[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            bs[p++] = (byte) (0x80 | (cp & 0x3F));
+            return p;
+        }
+
+        private static int escape(byte[] bs, int p, char c) {
+            bs[p++] = '\\';
+            bs[p++] = 'u';
+            bs[p++] = HEX[(c >> 12) & 0xF];
+            bs[p++] = HEX[(c >> 8) & 0xF];
+            bs[p++] = HEX[(c >> 4) & 0xF];
+            bs[p++] = HEX[c & 0xF];
+            return p;
+        }
+    }
+}
@@ -20,27 +20,60 @@
 
 package org.modelingvalue.json;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.RecordComponent;
 import java.lang.reflect.Type;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.function.Consumer;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
+// a TypeInfo is immutable and shared by all parses with an equal Config.Frozen; the scratch of one parse is in Spares
 abstract class TypeInfo {
-    private static final boolean TRACE = Boolean.getBoolean("JSON.TYPE_INFO.TRACE");
+    private static final boolean                            TRACE             = Boolean.getBoolean("JSON.TYPE_INFO.TRACE");
+    // per raw class, so the metadata goes away with the class; one entry per generic type and distinct config
+    private static final ClassValue<Map<TypeKey, TypeInfo>> CACHE             = new ClassValue<>() {
+        @Override
+        protected Map<TypeKey, TypeInfo> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private static final int                                MAX_SELECTOR_MEMO = Integer.getInteger("JSON.MAX_SELECTOR_MEMO", 10_000);
 
-    static TypeInfo makeTypeInfo(Type type, Config config, Consumer<TypeInfo> topStackReplacer) {
+    // selected: the class that a class-selector picked, it is made with its declared no-arg constructor
+    private record TypeKey(Type type, Config.Frozen config, boolean selected) {
+    }
+
+    static TypeInfo of(Type type, Config.Frozen config) {
+        Class<?> rawClass = U.getRawClassOf(type);
+        if (rawClass == null) {
+            return makeTypeInfo(type, config);
+        }
+        return CACHE.get(rawClass).computeIfAbsent(new TypeKey(type, config, false), k -> makeTypeInfo(type, config));
+    }
+
+    static ObjectTypeInfo ofSelected(Class<?> clazz, Config.Frozen config) {
+        return (ObjectTypeInfo) CACHE.get(clazz).computeIfAbsent(new TypeKey(clazz, config, true), k -> new ObjectTypeInfo(clazz, new ConstructorMaker(clazz, true), config));
+    }
+
+    private static TypeInfo makeTypeInfo(Type type, Config.Frozen config) {
         TypeInfo result;
         Class<?> rawClass = U.getRawClassOf(type);
 
@@ -53,7 +86,7 @@ abstract class TypeInfo {
         } else if (rawClass.isRecord()) {
             result = new RecordTypeInfo(rawClass, config);
         } else if (rawClass.isArray()) {
-            throw new RuntimeException("Arrays not yet supported: " + type);
+            result = new ArrayTypeInfo(rawClass, U.getComponentType(type), config);
         } else if (Object.class.isAssignableFrom(rawClass)) {
             Method classSelector = Arrays.stream(rawClass.getMethods())//
                                          .filter(m -> config.getAnnotation(m, JsonClassSelector.class) != null)//
@@ -64,7 +97,7 @@ abstract class TypeInfo {
                                          .findFirst()//
                                          .orElse(null);
             if (classSelector != null) {
-                result = new SelectorTypeInfo(rawClass, classSelector, config, topStackReplacer);
+                result = new SelectorTypeInfo(rawClass, classSelector, config);
             } else {
                 result = new ObjectTypeInfo(rawClass, config);
             }
@@ -78,7 +111,7 @@ abstract class TypeInfo {
         return result;
     }
 
-    abstract Maker getMaker();
+    abstract Object make(Spares spares);
 
     abstract List<String> getPropertyNames();
 
@@ -88,7 +121,23 @@ abstract class TypeInfo {
 
     abstract boolean isIdProperty(String name);
 
-    abstract Object convert(Object m);
+    abstract KeyMatcher getKeyMatcher();
+
+    abstract Object convert(Object m, Spares spares);
+
+    // the spare slot arrays and array buffers of one parse, so that they are reused without being shared between threads
+    static final class Spares {
+        private final Map<TypeInfo, ArrayDeque<Object>> spareMap = new IdentityHashMap<>();
+
+        Object poll(TypeInfo typeInfo) {
+            ArrayDeque<Object> spares = spareMap.get(typeInfo);
+            return spares == null ? null : spares.poll();
+        }
+
+        void push(TypeInfo typeInfo, Object spare) {
+            spareMap.computeIfAbsent(typeInfo, __ -> new ArrayDeque<>()).push(spare);
+        }
+    }
 
     interface Maker {
         Object make();
@@ -109,18 +158,33 @@ abstract class TypeInfo {
             if (Modifier.isAbstract(clazz.getModifiers())) {
                 throw new RuntimeException("problem instantiating abstract class " + clazz.getSimpleName());
             }
-            return () -> {
-                try {
-                    return clazz.getConstructor().newInstance();
-                } catch (InstantiationException |
-                         IllegalAccessException |
-                         InvocationTargetException |
-                         NoSuchMethodException e) {
-                    throw new RuntimeException("problem instantiating " + clazz.getSimpleName(), e);
-                }
-            };
+            return new ConstructorMaker(clazz, false);
         }
+    }
 
+    static class ConstructorMaker implements Maker {
+        private final    Class<?>     clazz;
+        private final    boolean      declared;
+        private volatile MethodHandle constructor; // the maker is shared between parses and threads
+
+        ConstructorMaker(Class<?> clazz, boolean declared) {
+            this.clazz    = clazz;
+            this.declared = declared;
+        }
+
+        @Override
+        public Object make() {
+            try {
+                if (constructor == null) {
+                    Constructor<?> c = declared ? clazz.getDeclaredConstructor() : clazz.getConstructor();
+                    c.setAccessible(true);
+                    constructor = MethodHandles.lookup().unreflectConstructor(c).asType(MethodType.methodType(Object.class));
+                }
+                return (Object) constructor.invokeExact();
+            } catch (Throwable e) {
+                throw new RuntimeException("problem instantiating " + clazz.getSimpleName(), e);
+            }
+        }
     }
 
     static abstract class BaseTypeInfo extends TypeInfo {
@@ -129,9 +193,9 @@ abstract class TypeInfo {
         final PropertySetter propertySetter;
         final Type           fieldType;
 
-        final Config config;
+        final Config.Frozen config;
 
-        BaseTypeInfo(Class<?> clazz, Maker maker, PropertySetter propertySetter, Type fieldType, Config config) {
+        BaseTypeInfo(Class<?> clazz, Maker maker, PropertySetter propertySetter, Type fieldType, Config.Frozen config) {
             this.clazz          = clazz;
             this.maker          = maker;
             this.propertySetter = propertySetter;
@@ -149,8 +213,8 @@ abstract class TypeInfo {
         }
 
         @Override
-        Maker getMaker() {
-            return maker;
+        Object make(Spares spares) {
+            return maker.make();
         }
 
         @Override
@@ -174,36 +238,104 @@ abstract class TypeInfo {
         }
 
         @Override
-        Object convert(Object m) {
+        KeyMatcher getKeyMatcher() {
+            return null;
+        }
+
+        @Override
+        Object convert(Object m, Spares spares) {
             return m;
         }
     }
 
     static class CollectionTypeInfo extends BaseTypeInfo {
-        public CollectionTypeInfo(Class<?> clazz, Type elementType, Config config) {
+        public CollectionTypeInfo(Class<?> clazz, Type elementType, Config.Frozen config) {
             super(clazz, Maker.of(clazz), CoercingPropertySetter.forCollection(elementType), elementType, config);
         }
     }
 
     static class MapTypeInfo extends BaseTypeInfo {
-        public MapTypeInfo(Class<?> clazz, Type elementType, Config config) {
+        public MapTypeInfo(Class<?> clazz, Type elementType, Config.Frozen config) {
             super(clazz, Maker.of(clazz), CoercingPropertySetter.forMap(elementType), elementType, config);
         }
     }
 
-    static class RecordTypeInfo extends BaseTypeInfo {
-        private final Class<?>[]                      types;
-        private final List<String>                    fieldNames;
-        private final Map<String, ? extends Class<?>> fieldTypesMap;
-        private final Map<String, PropertySetter>     fieldSettersMap;
+    static class ArrayTypeInfo extends BaseTypeInfo {
+        private final Class<?> componentClass;
+
+        public ArrayTypeInfo(Class<?> clazz, Type componentType, Config.Frozen config) {
+            super(clazz, null, CoercingPropertySetter.forArray(componentType), componentType, config);
+            componentClass = clazz.getComponentType();
+        }
+
+        @Override
+        Object make(Spares spares) {
+            Object buffer = spares.poll(this);
+            return buffer != null ? buffer : ArrayBuffer.of(componentClass);
+        }
+
+        @Override
+        Object convert(Object m, Spares spares) {
+            if (!(m instanceof ArrayBuffer buffer)) {
+                throw new RuntimeException("cannot convert " + m.getClass().getSimpleName() + " to " + clazz.getSimpleName());
+            }
+            Object array = buffer.toArray();
+            buffer.clear();
+            spares.push(this, buffer);
+            return array;
+        }
+    }
 
-        public RecordTypeInfo(Class<?> clazz, Config config) {
-            super(clazz, HashMap::new, CoercingPropertySetter.forMap(Object.class), null, config);
+    static class RecordTypeInfo extends BaseTypeInfo {
+        private final Class<?>[]           types;
+        private final Type[]               genericTypes;
+        private final List<String>         fieldNames;
+        private final Map<String, Integer> name2slotMap = new HashMap<>();
+        private final PropertySetter[]     slotSetters;
+        private final Object[]             slotDefaults;
+        private final MethodHandle         constructor;
+        private final KeyMatcher           keyMatcher;
+
+        public RecordTypeInfo(Class<?> clazz, Config.Frozen config) {
+            super(clazz, null, null, null, config);
             RecordComponent[] recordComponents = clazz.getRecordComponents();
-            types           = Arrays.stream(recordComponents).map(RecordComponent::getType).toArray(n -> new Class<?>[n]);
-            fieldNames      = Arrays.stream(recordComponents).map(RecordComponent::getName).toList();
-            fieldTypesMap   = Arrays.stream(recordComponents).collect(Collectors.toMap(RecordComponent::getName, RecordComponent::getType));
-            fieldSettersMap = Arrays.stream(recordComponents).collect(Collectors.toMap(RecordComponent::getName, rc -> CoercingPropertySetter.forMap(rc.getType())));
+            types        = Arrays.stream(recordComponents).map(RecordComponent::getType).toArray(n -> new Class<?>[n]);
+            genericTypes = Arrays.stream(recordComponents).map(RecordComponent::getGenericType).toArray(n -> new Type[n]);
+            fieldNames   = Arrays.stream(recordComponents).map(RecordComponent::getName).toList();
+            slotSetters  = new PropertySetter[types.length];
+            slotDefaults = new Object[types.length];
+            for (int slot = 0; slot < types.length; slot++) {
+                name2slotMap.put(fieldNames.get(slot), slot);
+                slotSetters[slot]  = CoercingPropertySetter.forRecordComponent(genericTypes[slot], slot);
+                slotDefaults[slot] = types[slot].isPrimitive() ? Array.get(Array.newInstance(types[slot], 1), 0) : null;
+            }
+            constructor = makeConstructorHandle();
+            keyMatcher  = KeyMatcher.of(fieldNames);
+        }
+
+        private MethodHandle makeConstructorHandle() {
+            try {
+                Constructor<?> c = clazz.getDeclaredConstructor(types);
+                c.setAccessible(true);
+                return MethodHandles.lookup()
+                                    .unreflectConstructor(c)
+                                    .asSpreader(Object[].class, types.length)
+                                    .asType(MethodType.methodType(Object.class, Object[].class));
+            } catch (NoSuchMethodException |
+                     IllegalAccessException |
+                     SecurityException e) {
+                throw new RuntimeException("could not find canonical constructor of record: " + clazz.getSimpleName() + "(" + getArgTypesString() + ")", e);
+            }
+        }
+
+        private String getArgTypesString() {
+            return Arrays.stream(types).map(Class::getSimpleName).collect(Collectors.joining(","));
+        }
+
+        @Override
+        Object make(Spares spares) {
+            Object slots = spares.poll(this);
+            return slots != null ? slots : slotDefaults.clone();
         }
 
         List<String> getPropertyNames() {
@@ -212,78 +344,104 @@ abstract class TypeInfo {
 
         @Override
         PropertySetter getPropertySetter(Object key) {
-            if (!(key instanceof String)) {
-                throw new RuntimeException("unexpected key type (String expected): " + key.getClass().getSimpleName());
-            }
-            return fieldSettersMap.get(key);
+            Integer slot = getSlot(key);
+            return slot == null ? null : slotSetters[slot];
         }
 
         @Override
         public Type getPropertyType(Object key) {
+            Integer slot = getSlot(key);
+            return slot == null ? null : genericTypes[slot];
+        }
+
+        @Override
+        KeyMatcher getKeyMatcher() {
+            return keyMatcher;
+        }
+
+        private Integer getSlot(Object key) {
             if (!(key instanceof String)) {
                 throw new RuntimeException("unexpected key type (String expected): " + key.getClass().getSimpleName());
             }
-            return fieldTypesMap.get(key);
+            return name2slotMap.get(key);
         }
 
         @Override
-        public Object convert(Object m) {
-            if (!(m instanceof Map<?, ?> map)) {
+        public Object convert(Object m, Spares spares) {
+            if (!(m instanceof Object[] slots) || slots.length != types.length) {
                 throw new RuntimeException("cannot convert " + m.getClass().getSimpleName() + " to " + clazz.getSimpleName());
             }
             try {
-                Object[] values = fieldNames.stream().map(map::get).toArray();
-                return clazz.getDeclaredConstructor(types).newInstance(values);
-            } catch (InstantiationException |
-                     IllegalAccessException |
-                     InvocationTargetException |
-                     NoSuchMethodException e) {
-                String argTypes = Arrays.stream(types).map(Class::getSimpleName).collect(Collectors.joining(","));
-                throw new RuntimeException("could not make record: " + clazz.getSimpleName() + "(" + argTypes + ")", e);
+                return (Object) constructor.invokeExact(slots);
+            } catch (Throwable e) {
+                throw new RuntimeException("could not make record: " + clazz.getSimpleName() + "(" + getArgTypesString() + ")", e);
+            } finally {
+                System.arraycopy(slotDefaults, 0, slots, 0, slots.length);
+                spares.push(this, slots);
             }
         }
     }
 
     static class SelectorTypeInfo extends BaseTypeInfo {
-        private final Method             classSelector;
-        private final Consumer<TypeInfo> topStackReplacer;
+        private final Method                   classSelector;
+        // keyed by raw json values, so it stops growing at JSON.MAX_SELECTOR_MEMO entries; after that the selector is called
+        private final Map<Selection, Class<?>> selectorMemoMap;
 
-        public SelectorTypeInfo(Class<?> clazz, Method classSelector, Config config, Consumer<TypeInfo> topStackReplacer) {
+        public SelectorTypeInfo(Class<?> clazz, Method classSelector, Config.Frozen config) {
             super(clazz, () -> null, null, null, config);
-            this.classSelector    = classSelector;
-            this.topStackReplacer = topStackReplacer;
+            this.classSelector   = classSelector;
+            this.selectorMemoMap = config.memoizeClassSelectors() ? new ConcurrentHashMap<>() : null;
         }
 
-        @Override
-        PropertySetter getPropertySetter(Object key_) {
-            return (o, key, v) -> {
-                assert o == null;
-                assert key == key_;
-                try {
-                    Object clazzObj = classSelector.invoke(null, key, v);
-                    if (!(clazzObj instanceof Class<?> clazzClass)) {
-                        throw new RuntimeException("problem in class-selector " + classSelector + ", it returned " + clazzObj);
-                    }
-                    ObjectTypeInfo newTypeInfo = new ObjectTypeInfo(clazzClass, config);
-                    topStackReplacer.accept(newTypeInfo);
-                    Object newObject = clazzClass.getDeclaredConstructor().newInstance();
-                    return newTypeInfo.getPropertyAccessor(key).getCoercingPropertySetter(config).set(newObject, key, v);
-                } catch (IllegalAccessException |
-                         InvocationTargetException |
-                         NoSuchMethodException |
-                         InstantiationException e) {
-                    throw new RuntimeException("problem in class-selector " + classSelector, e);
+        // the TypeInfo of the class that the selector picks for the first key of an object; the parser takes it over from there
+        ObjectTypeInfo select(Object key, Object v) {
+            return ofSelected(selectedClass(key, v), config);
+        }
+
+        private Class<?> selectedClass(Object key, Object v) {
+            if (selectorMemoMap == null) {
+                return selectClass(key, v);
+            }
+            Selection selection = new Selection(key, v);
+            Class<?>  selected  = selectorMemoMap.get(selection);
+            if (selected == null) {
+                selected = selectClass(key, v);
+                if (selectorMemoMap.size() < MAX_SELECTOR_MEMO) {
+                    selectorMemoMap.putIfAbsent(selection, selected);
+                }
+            }
+            return selected;
+        }
+
+        private Class<?> selectClass(Object key, Object v) {
+            try {
+                Object clazzObj = classSelector.invoke(null, key, v);
+                if (!(clazzObj instanceof Class<?> clazzClass)) {
+                    throw new RuntimeException("problem in class-selector " + classSelector + ", it returned " + clazzObj);
                 }
-            };
+                return clazzClass;
+            } catch (IllegalAccessException |
+                     InvocationTargetException e) {
+                throw new RuntimeException("problem in class-selector " + classSelector, e);
+            }
+        }
+
+        // a record, because the json value can be null
+        private record Selection(Object key, Object value) {
         }
     }
 
     static class ObjectTypeInfo extends BaseTypeInfo {
         private final Map<String, PropertyAccessor> name2paMap = new HashMap<>();
         private final String                        idFieldName;
+        private final KeyMatcher                    keyMatcher;
 
-        public ObjectTypeInfo(Class<?> clazz, Config config) {
-            super(clazz, Maker.of(clazz), null, null, config);
+        public ObjectTypeInfo(Class<?> clazz, Config.Frozen config) {
+            this(clazz, Maker.of(clazz), config);
+        }
+
+        public ObjectTypeInfo(Class<?> clazz, Maker maker, Config.Frozen config) {
+            super(clazz, maker, null, null, config);
 
             PropertyAccessor.all(clazz, config)
                             .forEach((name, pa) -> {
@@ -293,6 +451,7 @@ abstract class TypeInfo {
                             });
 
             idFieldName = name2paMap.values().stream().filter(mi -> mi.isId(config)).findFirst().map(PropertyAccessor::name).orElse(null);
+            keyMatcher  = KeyMatcher.of(name2paMap.keySet());
         }
 
         List<String> getPropertyNames() {
@@ -309,6 +468,11 @@ abstract class TypeInfo {
             return getPropertyAccessor(key).getCoercingPropertySetter(config);
         }
 
+        @Override
+        KeyMatcher getKeyMatcher() {
+            return keyMatcher;
+        }
+
         private PropertyAccessor getPropertyAccessor(Object key) {
             PropertyAccessor pa = getPropertyAccessorOrNull(key);
             if (pa != null) {
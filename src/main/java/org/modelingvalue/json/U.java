@@ -20,7 +20,9 @@
 
 package org.modelingvalue.json;
 
+import java.lang.reflect.Array;
 import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
@@ -30,12 +32,12 @@ import java.util.List;
 public class U {
     public static final String CLASS_NAME_FIELD_NAME = "~className";
 
-    static String getPropertyName(Field f, Config config) {
+    static String getPropertyName(Field f, Config.Frozen config) {
         JsonName nameAnno = config.getAnnotation(f, JsonName.class);
         return nameAnno != null ? nameAnno.value() : getPropertyName(f);
     }
 
-    static String getPropertyName(Method m, Config config) {
+    static String getPropertyName(Method m, Config.Frozen config) {
         JsonName nameAnno = config.getAnnotation(m, JsonName.class);
         return nameAnno != null ? nameAnno.value() : getPropertyName(m);
     }
@@ -56,10 +58,21 @@ public class U {
             }
         } else if (type instanceof Class<?> classType) {
             return classType;
+        } else if (type instanceof GenericArrayType arrayType) {
+            return Array.newInstance(getRawClassOf(arrayType.getGenericComponentType()), 0).getClass();
         }
         throw new IllegalArgumentException("no raw class can be determined for " + type);
     }
 
+    public static Type getComponentType(Type type) {
+        if (type instanceof GenericArrayType arrayType) {
+            return arrayType.getGenericComponentType();
+        } else if (type instanceof Class<?> classType && classType.isArray()) {
+            return classType.getComponentType();
+        }
+        throw new IllegalArgumentException("no component type can be determined for " + type);
+    }
+
     public static Type getElementType(Type type) {
         if (type instanceof ParameterizedType ptype) {
             List<Type> args = Arrays.stream(ptype.getActualTypeArguments()).toList();
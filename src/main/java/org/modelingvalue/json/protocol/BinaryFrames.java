@@ -0,0 +1,164 @@
+//~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+//  (C) Copyright 2018-2026 Modeling Value Group B.V. (http://modelingvalue.org)                                         ~
+//                                                                                                                       ~
+//  Licensed under the GNU Lesser General Public License v3.0 (the 'License'). You may not use this file except in       ~
+//  compliance with the License. You may obtain a copy of the License at: https://choosealicense.com/licenses/lgpl-3.0   ~
+//  Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on  ~
+//  an 'AS IS' BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the   ~
+//  specific language governing permissions and limitations under the License.                                           ~
+//                                                                                                                       ~
+//  Maintainers:                                                                                                         ~
+//      Wim Bast, Tom Brus                                                                                               ~
+//                                                                                                                       ~
+//  Contributors:                                                                                                        ~
+//      Ronald Krijgsheld ✝, Arjan Kok, Carel Bast                                                                       ~
+// --------------------------------------------------------------------------------------------------------------------- ~
+//  In Memory of Ronald Krijgsheld, 1972 - 2023                                                                          ~
+//      Ronald was suddenly and unexpectedly taken from us. He was not only our long-term colleague and team member      ~
+//      but also our friend. "He will live on in many of the lines of code you see below."                               ~
+//~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+package org.modelingvalue.json.protocol;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// the frames of ProtocolHandler.LENGTH_PREFIXED_FRAMES, numbers are big-endian:
+//     int  the length of the rest of the frame
+//     int  keyword ref
+//     int  sender ref
+//     long message number
+//     long correlation: 0, the id of a request (> 0) or minus the id of the request that is answered (< 0)
+//     the strings introduced by the refs, each as an unsigned short length and its UTF-8 bytes
+//     the json payload in UTF-8 up to the end of the frame
+// a ref >= 0 is the id of a string that came before on the same stream, a ref < 0 introduces string id -ref-1;
+// nothing needs escaping because the receiver knows where a frame ends before it looks into it.
+// one instance per direction of a stream: the writer only uses the sent ids, the reader only the received strings
+class BinaryFrames {
+    static final         int       HEADER_SIZE    = 4 + 4 + 4 + 8 + 8;
+    private static final int       MAX_FRAME_SIZE = Integer.getInteger("PROTOCOL.MAX_FRAME_SIZE", 1 << 28);
+    private static final VarHandle INTS           = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONGS          = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final Map<String, Integer> sentIds         = new HashMap<>();
+    private final List<String>         receivedStrings = new ArrayList<>();
+
+    // the UTF-8 payload of a frame, made on the sending thread so that a message that can not be sent fails for its sender;
+    // the size is checked as if the keyword and the sender still have to be introduced, so the frame always fits
+    static byte[] encode(String keyword, String sender, String json) {
+        byte[] body   = json.getBytes(StandardCharsets.UTF_8);
+        long   length = (long) HEADER_SIZE - 4 + 2 + stringSize(keyword) + 2 + stringSize(sender) + body.length;
+        if (MAX_FRAME_SIZE < length) {
+            throw new IllegalArgumentException("ProtocolHandler: message too big for a frame: " + length + " bytes");
+        }
+        return body;
+    }
+
+    private static int stringSize(String string) {
+        int size = string.getBytes(StandardCharsets.UTF_8).length;
+        if (0xFFFF < size) {
+            throw new IllegalArgumentException("ProtocolHandler: keyword or sender too long for a frame: " + string);
+        }
+        return size;
+    }
+
+    // writes a frame with a body from encode(), returns the number of bytes written
+    int write(DataOutputStream out, String keyword, String sender, long number, long correlation, byte[] body) throws IOException {
+        Integer kId    = sentIds.get(keyword);
+        Integer sId    = sentIds.get(sender);
+        int     next   = sentIds.size();
+        int     kRef   = kId != null ? kId : -(next++) - 1;
+        int     sRef   = sId != null ? sId : sender.equals(keyword) ? -kRef - 1 : -next - 1;
+        byte[]  k      = kRef < 0 ? keyword.getBytes(StandardCharsets.UTF_8) : null;
+        byte[]  s      = sRef < 0 ? sender.getBytes(StandardCharsets.UTF_8) : null;
+        int     length = HEADER_SIZE - 4 + (k == null ? 0 : 2 + k.length) + (s == null ? 0 : 2 + s.length) + body.length;
+        out.writeInt(length);
+        out.writeInt(kRef);
+        out.writeInt(sRef);
+        out.writeLong(number);
+        out.writeLong(correlation);
+        writeString(out, k);
+        writeString(out, s);
+        out.write(body);
+        // a string only counts as sent once the frame that introduces it is written
+        if (kRef < 0) {
+            sentIds.put(keyword, -kRef - 1);
+        }
+        if (sRef < 0) {
+            sentIds.put(sender, -sRef - 1);
+        }
+        return 4 + length;
+    }
+
+    private static void writeString(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes != null) {
+            out.writeShort(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    // the size of the frame at b[start], or 0 when it is not complete in b[start,end);
+    // a StreamCorruptedException means that the stream can not be cut into frames any more
+    static int frameSize(byte[] b, int start, int end) throws StreamCorruptedException {
+        if (end - start < 4) {
+            return 0;
+        }
+        int length = (int) INTS.get(b, start);
+        if (length < HEADER_SIZE - 4 || MAX_FRAME_SIZE < length) {
+            throw new StreamCorruptedException("ProtocolHandler: bad frame length " + length);
+        }
+        return end - start - 4 < length ? 0 : 4 + length;
+    }
+
+    // hands the frame at b[start] to the handler and returns its size, or returns 0 when it is not complete in b[start,end);
+    // a StreamCorruptedException means that the stream can not be cut into frames any more
+    int read(byte[] b, int start, int end, ProtocolHandler handler) throws IOException {
+        int size = frameSize(b, start, end);
+        if (size == 0) {
+            return 0;
+        }
+        int  frameEnd    = start + size;
+        int  kRef        = (int) INTS.get(b, start + 4);
+        int  sRef        = (int) INTS.get(b, start + 8);
+        long number      = (long) LONGS.get(b, start + 12);
+        long correlation = (long) LONGS.get(b, start + 20);
+        int  i           = start + HEADER_SIZE;
+        if (kRef < 0) {
+            i = readString(b, i, frameEnd, kRef);
+        }
+        if (sRef < 0) {
+            i = readString(b, i, frameEnd, sRef);
+        }
+        handler.receivedFrame(string(kRef), string(sRef), number, correlation, new String(b, i, frameEnd - i, StandardCharsets.UTF_8));
+        return size;
+    }
+
+    private int readString(byte[] b, int i, int frameEnd, int ref) throws IOException {
+        if (-ref - 1 != receivedStrings.size() || frameEnd < i + 2) {
+            throw new StreamCorruptedException("ProtocolHandler: bad string introduction in frame");
+        }
+        int n = ((b[i] & 0xff) << 8) | (b[i + 1] & 0xff);
+        if (frameEnd < i + 2 + n) {
+            throw new StreamCorruptedException("ProtocolHandler: bad string length in frame");
+        }
+        receivedStrings.add(new String(b, i + 2, n, StandardCharsets.UTF_8));
+        return i + 2 + n;
+    }
+
+    private String string(int ref) throws IOException {
+        int id = ref < 0 ? -ref - 1 : ref;
+        if (receivedStrings.size() <= id) {
+            throw new StreamCorruptedException("ProtocolHandler: unknown string id in frame: " + id);
+        }
+        return receivedStrings.get(id);
+    }
+}
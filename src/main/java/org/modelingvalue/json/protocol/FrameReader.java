@@ -0,0 +1,125 @@
+//~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+//  (C) Copyright 2018-2026 Modeling Value Group B.V. (http://modelingvalue.org)                                         ~
+//                                                                                                                       ~
+//  Licensed under the GNU Lesser General Public License v3.0 (the 'License'). You may not use this file except in       ~
+//  compliance with the License. You may obtain a copy of the License at: https://choosealicense.com/licenses/lgpl-3.0   ~
+//  Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on  ~
+//  an 'AS IS' BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the   ~
+//  specific language governing permissions and limitations under the License.                                           ~
+//                                                                                                                       ~
+//  Maintainers:                                                                                                         ~
+//      Wim Bast, Tom Brus                                                                                               ~
+//                                                                                                                       ~
+//  Contributors:                                                                                                        ~
+//      Ronald Krijgsheld ✝, Arjan Kok, Carel Bast                                                                       ~
+// --------------------------------------------------------------------------------------------------------------------- ~
+//  In Memory of Ronald Krijgsheld, 1972 - 2023                                                                          ~
+//      Ronald was suddenly and unexpectedly taken from us. He was not only our long-term colleague and team member      ~
+//      but also our friend. "He will live on in many of the lines of code you see below."                               ~
+//~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+package org.modelingvalue.json.protocol;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// reads the incoming stream in blocks and cuts it into messages on the separator or, with
+// ProtocolHandler.LENGTH_PREFIXED_FRAMES, into binary frames of a known length;
+// every message is decoded as UTF-8 straight from the block it is in
+class FrameReader {
+    private static final int INITIAL_BUFFER_SIZE = Integer.getInteger("JSON.FRAME_BUFFER_SIZE", 16 * 1024);
+    private static final int MAX_KEPT_SIZE       = 1 << 20;
+
+    static byte separatorByte(char messageSeparator) {
+        if (0x80 <= messageSeparator) {
+            throw new IllegalArgumentException("ProtocolHandler: the message separator must be an ascii character");
+        }
+        return (byte) messageSeparator;
+    }
+
+    private final InputStream  in;
+    private final byte         separator;
+    private final BinaryFrames frames;
+    private       byte[]       buffer = new byte[INITIAL_BUFFER_SIZE];
+    private       int          start; // the unread bytes are in [start,end)
+    private       int          end;
+    private       int          scanned; // there is no separator in [start,scanned)
+
+    FrameReader(InputStream in, char messageSeparator) {
+        boolean binary = messageSeparator == ProtocolHandler.LENGTH_PREFIXED_FRAMES;
+        this.in        = in;
+        this.separator = binary ? 0 : separatorByte(messageSeparator);
+        this.frames    = binary ? new BinaryFrames() : null;
+    }
+
+    // the next message without its separator, or null at the end of the stream
+    String readFrame() throws IOException {
+        while (true) {
+            byte[] b   = buffer;
+            byte   sep = separator;
+            for (int i = scanned; i < end; i++) {
+                if (b[i] == sep) {
+                    String frame = new String(b, start, i - start, StandardCharsets.UTF_8);
+                    start   = i + 1;
+                    scanned = start;
+                    return frame;
+                }
+            }
+            scanned = end;
+            if (!fill()) {
+                if (start == end) {
+                    return null;
+                }
+                String frame = new String(buffer, start, end - start, StandardCharsets.UTF_8);
+                start   = end;
+                scanned = end;
+                return frame;
+            }
+        }
+    }
+
+    // hands the next binary frame to the handler, returns false at the end of the stream
+    boolean readBinaryFrame(ProtocolHandler handler) throws IOException {
+        while (true) {
+            int n = frames.read(buffer, start, end, handler);
+            if (0 < n) {
+                start += n;
+                scanned = start;
+                return true;
+            }
+            if (!fill()) {
+                if (start == end) {
+                    return false;
+                }
+                start   = end;
+                scanned = end;
+                throw new EOFException("ProtocolHandler: the stream ended inside a frame");
+            }
+        }
+    }
+
+    // makes room and reads the next block, returns false at the end of the stream
+    private boolean fill() throws IOException {
+        if (start == end && MAX_KEPT_SIZE < buffer.length) {
+            buffer = new byte[INITIAL_BUFFER_SIZE];
+        }
+        if (0 < start) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            scanned -= start;
+            start = 0;
+        }
+        if (end == buffer.length) {
+            buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+        }
+        int n = in.read(buffer, end, buffer.length - end);
+        if (n < 0) {
+            return false;
+        }
+        end += n;
+        return true;
+    }
+}
@@ -0,0 +1,93 @@
+//~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+//  (C) Copyright 2018-2026 Modeling Value Group B.V. (http://modelingvalue.org)                                         ~
+//                                                                                                                       ~
+//  Licensed under the GNU Lesser General Public License v3.0 (the 'License'). You may not use this file except in       ~
+//  compliance with the License. You may obtain a copy of the License at: https://choosealicense.com/licenses/lgpl-3.0   ~
+//  Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on  ~
+//  an 'AS IS' BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the   ~
+//  specific language governing permissions and limitations under the License.                                           ~
+//                                                                                                                       ~
+//  Maintainers:                                                                                                         ~
+//      Wim Bast, Tom Brus                                                                                               ~
+//                                                                                                                       ~
+//  Contributors:                                                                                                        ~
+//      Ronald Krijgsheld ✝, Arjan Kok, Carel Bast                                                                       ~
+// --------------------------------------------------------------------------------------------------------------------- ~
+//  In Memory of Ronald Krijgsheld, 1972 - 2023                                                                          ~
+//      Ronald was suddenly and unexpectedly taken from us. He was not only our long-term colleague and team member      ~
+//      but also our friend. "He will live on in many of the lines of code you see below."                               ~
+//~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+package org.modelingvalue.json.protocol;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+// writes messages as text lines ending in the separator, or as binary frames with ProtocolHandler.LENGTH_PREFIXED_FRAMES;
+// only used by one writer at a time
+class FrameWriter implements Closeable {
+    private final char             separator;
+    private final BufferedWriter   text;
+    private final DataOutputStream binary;
+    private final BinaryFrames     frames;
+
+    FrameWriter(OutputStream out, char messageSeparator) {
+        separator = messageSeparator;
+        if (messageSeparator == ProtocolHandler.LENGTH_PREFIXED_FRAMES) {
+            text   = null;
+            binary = new DataOutputStream(new BufferedOutputStream(out, 8192));
+            frames = new BinaryFrames();
+        } else {
+            text   = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            binary = null;
+            frames = null;
+        }
+    }
+
+    // on the sending thread: the payload of a binary frame, see BinaryFrames.encode(); null for text lines
+    byte[] encode(String keyword, String sender, String json) {
+        return frames != null ? BinaryFrames.encode(keyword, sender, json) : null;
+    }
+
+    // returns the number of chars or bytes written; in text the correlation goes after the keyword, see ProtocolHandler.REQUEST_MARK
+    int write(String keyword, String sender, long number, long correlation, String json, byte[] encoded) throws IOException {
+        if (frames != null) {
+            return frames.write(binary, keyword, sender, number, correlation, encoded);
+        }
+        String n = Long.toString(number);
+        String c = correlation == 0 ? "" : (0 < correlation ? ProtocolHandler.REQUEST_MARK : ProtocolHandler.ANSWER_MARK) + Long.toString(Math.abs(correlation));
+        text.write(keyword);
+        text.write(c);
+        text.write(ProtocolHandler.PROTOCOL_SEPARATOR);
+        text.write(sender);
+        text.write(ProtocolHandler.PROTOCOL_SEPARATOR);
+        text.write(n);
+        text.write(ProtocolHandler.PROTOCOL_SEPARATOR);
+        text.write(json);
+        text.write(separator);
+        return keyword.length() + c.length() + sender.length() + n.length() + json.length() + 4;
+    }
+
+    void flush() throws IOException {
+        if (frames != null) {
+            binary.flush();
+        } else {
+            text.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (frames != null) {
+            binary.close();
+        } else {
+            text.close();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+//~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+//  (C) Copyright 2018-2026 Modeling Value Group B.V. (http://modelingvalue.org)                                         ~
+//                                                                                                                       ~
+//  Licensed under the GNU Lesser General Public License v3.0 (the 'License'). You may not use this file except in       ~
+//  compliance with the License. You may obtain a copy of the License at: https://choosealicense.com/licenses/lgpl-3.0   ~
+//  Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on  ~
+//  an 'AS IS' BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the   ~
+//  specific language governing permissions and limitations under the License.                                           ~
+//                                                                                                                       ~
+//  Maintainers:                                                                                                         ~
+//      Wim Bast, Tom Brus                                                                                               ~
+//                                                                                                                       ~
+//  Contributors:                                                                                                        ~
+//      Ronald Krijgsheld ✝, Arjan Kok, Carel Bast                                                                       ~
+// --------------------------------------------------------------------------------------------------------------------- ~
+//  In Memory of Ronald Krijgsheld, 1972 - 2023                                                                          ~
+//      Ronald was suddenly and unexpectedly taken from us. He was not only our long-term colleague and team member      ~
+//      but also our friend. "He will live on in many of the lines of code you see below."                               ~
+//~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+package org.modelingvalue.json.protocol;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// decides where the MessageHandlers of a ProtocolHandler run:
+//   INLINE      on the thread that reads the messages (one slow handler stalls all traffic)
+//   PER_PEER    on the executor, the messages of one peer one after the other in arrival order
+//   PER_KEYWORD on the executor, the messages with the same keyword one after the other in arrival order
+// the built-in handlers of the ProtocolHandler ($peer_enter, $peer_leave, $remote_error) always run inline
+public class HandlerDispatcher {
+    public enum Order {
+        INLINE,
+        PER_PEER,
+        PER_KEYWORD
+    }
+
+    private static final Executor         VIRTUAL_THREADS = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ProtocolHandler-handler-", 0).factory());
+    public static final  HandlerDispatcher INLINE          = new HandlerDispatcher(Order.INLINE, Runnable::run);
+
+    // the Order named by the PROTOCOL.DISPATCH property; a name that is not an Order is an IllegalArgumentException
+    public static HandlerDispatcher ofDefault() {
+        return ofDefault(Order.INLINE);
+    }
+
+    // the same, with the given Order when the property is not set
+    public static HandlerDispatcher ofDefault(Order unset) {
+        String name = System.getProperty("PROTOCOL.DISPATCH", unset.name());
+        Order  order;
+        try {
+            order = Order.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("PROTOCOL.DISPATCH=" + name + " is not one of " + Arrays.toString(Order.values()), e);
+        }
+        return order == Order.INLINE ? INLINE : new HandlerDispatcher(order, VIRTUAL_THREADS);
+    }
+
+    public static HandlerDispatcher perPeer() {
+        return new HandlerDispatcher(Order.PER_PEER, VIRTUAL_THREADS);
+    }
+
+    public static HandlerDispatcher perKeyword() {
+        return new HandlerDispatcher(Order.PER_KEYWORD, VIRTUAL_THREADS);
+    }
+
+    private final Order               order;
+    private final Executor            executor;
+    private final Map<String, Serial> serials = new ConcurrentHashMap<>();
+
+    public HandlerDispatcher(Order order, Executor executor) {
+        this.order    = order;
+        this.executor = executor;
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    void dispatch(Message message, Runnable handling) {
+        switch (order) {
+            case INLINE -> handling.run();
+            case PER_PEER -> serials.computeIfAbsent(message.senderUuid(), k -> new Serial()).execute(handling);
+            case PER_KEYWORD -> serials.computeIfAbsent(message.keyword(), k -> new Serial()).execute(handling);
+        }
+    }
+
+    // a peer that left sends no more messages; what it still has queued runs to the end
+    void peerLeft(String peerUuid) {
+        if (order == Order.PER_PEER) {
+            serials.remove(peerUuid);
+        }
+    }
+
+    // runs its tasks one at a time on the executor; at most one of them is submitted at any moment
+    private class Serial implements Runnable {
+        private final Queue<Runnable> queue   = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean   running = new AtomicBoolean();
+
+        // a task that the executor rejects is not run later either
+        void execute(Runnable r) {
+            queue.add(r);
+            if (running.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    queue.remove(r);
+                    running.set(false);
+                    throw e;
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            do {
+                try {
+                    for (Runnable r; (r = queue.poll()) != null; ) {
+                        r.run();
+                    }
+                } finally {
+                    running.set(false);
+                }
+            } while (!queue.isEmpty() && running.compareAndSet(false, true));
+        }
+    }
+}
@@ -31,19 +31,30 @@ public interface Message {
 
     Object json();
 
+    // the id that ties a request to its answers, 0 when the message is not part of a ProtocolHandler.request()
+    default long correlationId() {
+        return 0;
+    }
+
     class MessageImpl implements Message {
         private final String keyWord;
         private final String senderUuid;
         private final long   senderMessageNumber;
         private final long   receiverMessageNumber;
         private final Object json;
+        private final long   correlationId;
 
         public MessageImpl(String keyWord, String senderUuid, long senderMessageNumber, long receiverMessageNumber, Object json) {
+            this(keyWord, senderUuid, senderMessageNumber, receiverMessageNumber, json, 0);
+        }
+
+        public MessageImpl(String keyWord, String senderUuid, long senderMessageNumber, long receiverMessageNumber, Object json, long correlationId) {
             this.keyWord               = keyWord;
             this.senderUuid            = senderUuid;
             this.senderMessageNumber   = senderMessageNumber;
             this.receiverMessageNumber = receiverMessageNumber;
             this.json                  = json;
+            this.correlationId         = correlationId;
         }
 
         @Override
@@ -70,5 +81,10 @@ public interface Message {
         public Object json() {
             return json;
         }
+
+        @Override
+        public long correlationId() {
+            return correlationId;
+        }
     }
 }
@@ -0,0 +1,389 @@
+//~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+//  (C) Copyright 2018-2026 Modeling Value Group B.V. (http://modelingvalue.org)                                         ~
+//                                                                                                                       ~
+//  Licensed under the GNU Lesser General Public License v3.0 (the 'License'). You may not use this file except in       ~
+//  compliance with the License. You may obtain a copy of the License at: https://choosealicense.com/licenses/lgpl-3.0   ~
+//  Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on  ~
+//  an 'AS IS' BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the   ~
+//  specific language governing permissions and limitations under the License.                                           ~
+//                                                                                                                       ~
+//  Maintainers:                                                                                                         ~
+//      Wim Bast, Tom Brus                                                                                               ~
+//                                                                                                                       ~
+//  Contributors:                                                                                                        ~
+//      Ronald Krijgsheld ✝, Arjan Kok, Carel Bast                                                                       ~
+// --------------------------------------------------------------------------------------------------------------------- ~
+//  In Memory of Ronald Krijgsheld, 1972 - 2023                                                                          ~
+//      Ronald was suddenly and unexpectedly taken from us. He was not only our long-term colleague and team member      ~
+//      but also our friend. "He will live on in many of the lines of code you see below."                               ~
+//~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+package org.modelingvalue.json.protocol;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// reads the connections of many ProtocolHandlers on a few selector threads instead of a thread per connection
+public class NioTransport implements Closeable {
+    private static final int INITIAL_BUFFER_SIZE = Integer.getInteger("JSON.NIO_BUFFER_SIZE", 16 * 1024);
+    private static final int MAX_PENDING         = Integer.getInteger("JSON.NIO_MAX_PENDING", 1 << 20);
+    private static final int CLOSE_LINGER_MS     = Integer.getInteger("JSON.NIO_CLOSE_LINGER", 5000);
+
+    private final SelectorThread[] selectorThreads;
+    private final AtomicInteger    nextSelectorThread = new AtomicInteger();
+
+    public NioTransport(int numSelectorThreads) throws IOException {
+        if (numSelectorThreads < 1) {
+            throw new IllegalArgumentException("NioTransport: needs at least one selector thread");
+        }
+        selectorThreads = new SelectorThread[numSelectorThreads];
+        for (int i = 0; i < numSelectorThreads; i++) {
+            selectorThreads[i] = new SelectorThread("NioTransport-" + i);
+            selectorThreads[i].start();
+        }
+    }
+
+    // the channel is made non-blocking here, before anything is written to it, so that registering it with the selector
+    // never has to wait for a blocking write
+    Connection connection(SocketChannel channel, ProtocolHandler handler, char messageSeparator) {
+        try {
+            channel.configureBlocking(false);
+        } catch (IOException e) {
+            throw new RuntimeException("NioTransport: cannot make the channel non-blocking", e);
+        }
+        SelectorThread selectorThread = selectorThreads[Math.floorMod(nextSelectorThread.getAndIncrement(), selectorThreads.length)];
+        if (messageSeparator == ProtocolHandler.LENGTH_PREFIXED_FRAMES) {
+            return new Connection(channel, handler, (byte) 0, new BinaryFrames(), selectorThread);
+        }
+        return new Connection(channel, handler, FrameReader.separatorByte(messageSeparator), null, selectorThread);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (SelectorThread t : selectorThreads) {
+            t.close();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////////////////////////
+    private static class SelectorThread extends Thread {
+        private final Selector          selector;
+        private final Queue<Connection> toRegister = new ConcurrentLinkedQueue<>();
+        private volatile boolean        stop;
+
+        SelectorThread(String name) throws IOException {
+            super(name);
+            selector = Selector.open();
+            setDaemon(true);
+        }
+
+        void register(Connection c) {
+            toRegister.add(c);
+            selector.wakeup();
+        }
+
+        void close() throws IOException {
+            stop = true;
+            selector.wakeup();
+            if (Thread.currentThread() != this) {
+                try {
+                    join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            for (SelectionKey key : selector.keys()) {
+                ((Connection) key.attachment()).close();
+            }
+            for (Connection c; (c = toRegister.poll()) != null; ) {
+                c.close();
+            }
+            selector.close();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!stop) {
+                    selector.select();
+                    for (Connection c; (c = toRegister.poll()) != null; ) {
+                        c.registerWith(selector);
+                    }
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        try {
+                            Connection c = (Connection) key.attachment();
+                            if (key.isWritable()) {
+                                c.writePending(key);
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                c.read();
+                            }
+                        } catch (CancelledKeyException e) {
+                            // closed while we were selecting
+                        }
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                // closed by close()
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////////////////////////
+    static class Connection implements ProtocolHandler.Incoming {
+        private final    SocketChannel   channel;
+        private final    ProtocolHandler handler;
+        private final    byte            separator;
+        private final    BinaryFrames    frames; // only with LENGTH_PREFIXED_FRAMES
+        private final    SelectorThread  selectorThread;
+        private final    Object          writeLock = new Object();
+        private          ByteBuffer      in        = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        private          ByteBuffer      pending   = ByteBuffer.allocate(0); // what the socket did not take yet, only with the writeLock held
+        private          IOException     writeFailure;
+        private volatile boolean         alive;
+        private volatile boolean         closed;
+
+        private Connection(SocketChannel channel, ProtocolHandler handler, byte separator, BinaryFrames frames, SelectorThread selectorThread) {
+            this.channel        = channel;
+            this.handler        = handler;
+            this.separator      = separator;
+            this.frames         = frames;
+            this.selectorThread = selectorThread;
+        }
+
+        @Override
+        public void start() {
+            alive = true;
+            selectorThread.register(this);
+        }
+
+        @Override
+        public void shutdown() throws IOException {
+            close();
+        }
+
+        @Override
+        public boolean isAlive() {
+            return alive;
+        }
+
+        private void registerWith(Selector selector) throws IOException {
+            synchronized (writeLock) {
+                if (closed) {
+                    return;
+                }
+                channel.register(selector, SelectionKey.OP_READ | (0 < pending.position() ? SelectionKey.OP_WRITE : 0), this);
+            }
+        }
+
+        // on the selector thread: reads what is available and hands every complete message to the handler;
+        // a failing read or a stream that can not be cut into messages closes the connection, a failing handler only loses its message
+        private void read() {
+            try {
+                int n = channel.read(in);
+                if (n < 0) {
+                    endOfInput();
+                    return;
+                }
+                byte[] bytes = in.array();
+                int    end   = in.position();
+                int    start = 0;
+                if (frames != null) {
+                    for (int size; 0 < (size = BinaryFrames.frameSize(bytes, start, end)); start += size) {
+                        try {
+                            frames.read(bytes, start, end, handler);
+                        } catch (RuntimeException | Error e) {
+                            handlerFailed(e);
+                        }
+                    }
+                } else {
+                    for (int i = end - n; i < end; i++) {
+                        if (bytes[i] == separator) {
+                            String line = new String(bytes, start, i - start, StandardCharsets.UTF_8);
+                            start = i + 1;
+                            try {
+                                handler.receivedLine(line);
+                            } catch (RuntimeException | Error e) {
+                                handlerFailed(e);
+                            }
+                        }
+                    }
+                }
+                in.position(start).limit(end);
+                in.compact();
+                if (!in.hasRemaining()) {
+                    // a message that does not fit in the buffer
+                    in = ByteBuffer.wrap(Arrays.copyOf(in.array(), 2 * in.capacity())).position(in.position());
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    handler.receiveFailed(e);
+                }
+                close();
+            }
+        }
+
+        // reported the same way as a handler that fails on the executor of a HandlerDispatcher, the reading goes on
+        private void handlerFailed(Throwable e) {
+            try {
+                handler.receiveFailed(e);
+            } catch (RuntimeException e2) {
+                e2.printStackTrace();
+            }
+        }
+
+        OutputStream outputStream() {
+            return new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[]{(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    Connection.this.write(ByteBuffer.wrap(b, off, len));
+                }
+
+                @Override
+                public void close() {
+                    closeWhenWritten();
+                }
+            };
+        }
+
+        // the channel is non-blocking: what the socket does not take is kept and written by the selector thread when
+        // the socket is writable again (OP_WRITE). A sender only waits when more than MAX_PENDING bytes are kept,
+        // and never on the selector thread, where handlers that send would otherwise stall every connection.
+        private void write(ByteBuffer bb) throws IOException {
+            synchronized (writeLock) {
+                while (bb.hasRemaining()) {
+                    checkOpen();
+                    if (pending.position() == 0) {
+                        channel.write(bb);
+                    } else if (MAX_PENDING <= pending.position() && Thread.currentThread() != selectorThread) {
+                        try {
+                            writeLock.wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException("NioTransport: interrupted while waiting for the socket");
+                        }
+                        continue;
+                    }
+                    if (bb.hasRemaining()) {
+                        keep(bb);
+                    }
+                }
+            }
+        }
+
+        private void checkOpen() throws IOException {
+            if (closed) {
+                throw new IOException("NioTransport: connection is closed", writeFailure);
+            }
+        }
+
+        private void keep(ByteBuffer bb) {
+            if (pending.remaining() < bb.remaining()) {
+                int size = Math.max(pending.position() + bb.remaining(), Math.max(INITIAL_BUFFER_SIZE, 2 * pending.capacity()));
+                pending = ByteBuffer.allocate(size).put(pending.flip());
+            }
+            pending.put(bb);
+            SelectionKey key = channel.keyFor(selectorThread.selector);
+            if (key != null && key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                selectorThread.selector.wakeup();
+            }
+            // not registered yet: registerWith() asks for OP_WRITE
+        }
+
+        // on the selector thread when the socket is writable again
+        private void writePending(SelectionKey key) {
+            synchronized (writeLock) {
+                if (closed) {
+                    return;
+                }
+                try {
+                    channel.write(pending.flip());
+                    pending.compact();
+                } catch (IOException e) {
+                    writeFailure = e;
+                    close();
+                    return;
+                }
+                if (pending.position() == 0) {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                    if (INITIAL_BUFFER_SIZE < pending.capacity()) {
+                        pending = ByteBuffer.allocate(0);
+                    }
+                }
+                writeLock.notifyAll();
+            }
+        }
+
+        // closing the output stream at shutdown: what is still kept goes out first, waiting at most CLOSE_LINGER_MS
+        private void closeWhenWritten() {
+            synchronized (writeLock) {
+                long deadline = System.currentTimeMillis() + CLOSE_LINGER_MS;
+                for (long left; 0 < pending.position() && !closed && Thread.currentThread() != selectorThread && 0 < (left = deadline - System.currentTimeMillis()); ) {
+                    try {
+                        writeLock.wait(left);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+            close();
+        }
+
+        // the peer closed its side: stop reading, sending is still possible until shutdown
+        private void endOfInput() {
+            SelectionKey key = channel.keyFor(selectorThread.selector);
+            if (key != null) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+            stopped();
+        }
+
+        private void stopped() {
+            if (alive) {
+                alive = false;
+                handler.shutdownDone();
+            }
+        }
+
+        private void close() {
+            if (!closed) {
+                closed = true;
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // already gone
+                }
+                synchronized (writeLock) {
+                    writeLock.notifyAll();
+                }
+                stopped();
+            }
+        }
+    }
+}
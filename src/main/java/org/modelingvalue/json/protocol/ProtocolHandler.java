@@ -24,43 +24,78 @@ import org.modelingvalue.json.FromJsonListMap;
 import org.modelingvalue.json.ToJson;
 import org.modelingvalue.json.protocol.Message.MessageImpl;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.io.StreamCorruptedException;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 import java.rmi.RemoteException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class ProtocolHandler {
-    public static final boolean TRACE                    = false;
-    public static final String  REMOTE_ERROR_MESSAGE_KEY = "$remote_error";
-    public static final String  PEER_ENTER_MESSAGE_KEY   = "$peer_enter";
-    public static final String  PEER_LEAVE_MESSAGE_KEY   = "$peer_leave";
-    public static final char    PROTOCOL_SEPARATOR       = ':';
-
-    private final String                            uuid                      = UUID.randomUUID().toString();
-    private final Map<String, MessageHandler>       handlerMap                = new HashMap<>();
-    private final AtomicLong                        nextSendMessageNumber     = new AtomicLong();
-    private final AtomicLong                        nextReceivedMessageNumber = new AtomicLong();
-    private final List<Throwable>                   problems                  = new ArrayList<>();
-    private final Map<String, String>               peerMap                   = new HashMap<>();
-    private final Map<String, Map<String, Message>> lastMessagesMap           = new HashMap<>();
-    private final String                            name;
-    private final BufferedWriter                    out;
-    private final char                              messageSeparator;
-    private final IncomingMessagesThread            inThread;
+    public static final boolean TRACE                     = false;
+    public static final String  REMOTE_ERROR_MESSAGE_KEY  = "$remote_error";
+    public static final String  PEER_ENTER_MESSAGE_KEY    = "$peer_enter";
+    public static final String  PEER_LEAVE_MESSAGE_KEY    = "$peer_leave";
+    public static final String  PEER_FEATURES_MESSAGE_KEY = "$peer_features"; // sent before $peer_enter, older peers count it but ignore it
+    public static final String  CORRELATION_FEATURE       = "correlation";
+    public static final char    PROTOCOL_SEPARATOR        = ':';
+    public static final char    LENGTH_PREFIXED_FRAMES    = '\uFFFF'; // as messageSeparator: binary frames instead of text lines
+    public static final int     MAX_SEND_BATCH            = Integer.getInteger("PROTOCOL.MAX_SEND_BATCH", 64 * 1024);
+    public static final int     MAX_SEND_DELAY_MS         = Integer.getInteger("PROTOCOL.MAX_SEND_DELAY_MS", 5);
+    public static final char    REQUEST_MARK              = '?'; // in text lines keyword?id sends request id and keyword!id answers it,
+    public static final char    ANSWER_MARK               = '!'; // only between peers that announced the CORRELATION_FEATURE
+
+    private static final ThreadLocal<Answering> ANSWERING = new ThreadLocal<>();
+
+    private final String                             uuid                      = UUID.randomUUID().toString();
+    private final Map<String, MessageHandler>        handlerMap                = new HashMap<>();
+    private final AtomicLong                         nextSendMessageNumber     = new AtomicLong();
+    private final AtomicLong                         nextReceivedMessageNumber = new AtomicLong();
+    private final List<Throwable>                    problems                  = new ArrayList<>();
+    private final Map<String, String>                peerMap                   = new HashMap<>();
+    private final Map<String, Map<String, Message>>  lastMessagesMap           = new HashMap<>();
+    private final Queue<Outgoing>                    outQueue                  = new ConcurrentLinkedQueue<>();
+    private final Thread                             writer                    = Thread.ofVirtual().unstarted(this::writeQueued);
+    private final AtomicBoolean                      writerAwake               = new AtomicBoolean(true); // set by the sender that wakes the writer
+    private final Outgoing                           closeMark                 = new Outgoing(null, null, null, 0); // queued by closeOut()
+    private volatile boolean                         outClosed; // sends fail from here on
+    private volatile boolean                         outDone; // the closeMark was written, the writer stops
+    private volatile HandlerDispatcher               dispatcher                = HandlerDispatcher.ofDefault();
+    private final Map<Long, PendingRequest>          pendingRequests           = new ConcurrentHashMap<>();
+    private final Map<String, Deque<PendingRequest>> uncorrelatedRequests      = new ConcurrentHashMap<>(); // per answer keyword, oldest first
+    private final Set<String>                        correlatingPeers          = ConcurrentHashMap.newKeySet();
+    // a random start, so that answers to other peers that a proxy passes on are not taken for ours
+    private final AtomicLong                         nextCorrelationId         = new AtomicLong(ThreadLocalRandom.current().nextLong(1, 1L << 59));
+    private final String                             name;
+    private final FrameWriter                        out;
+    private final char                               messageSeparator;
+    private final Incoming                           incoming;
 
     public static ProtocolHandler of(String host, int port, char messageSeparator) throws IOException {
         //noinspection resource
@@ -72,25 +107,77 @@ public class ProtocolHandler {
         return protocolHandler;
     }
 
+    // the connection is read by one of the selector threads of the transport instead of a thread of its own
+    public static ProtocolHandler of(NioTransport transport, String host, int port, char messageSeparator) throws IOException {
+        SocketChannel   channel         = SocketChannel.open(new InetSocketAddress(host, port));
+        ProtocolHandler protocolHandler = new ProtocolHandler("PH:" + channel.getRemoteAddress().toString(), channel, transport, messageSeparator);
+        protocolHandler.start();
+        return protocolHandler;
+    }
+
     public ProtocolHandler(String name, InputStream in, OutputStream out, char messageSeparator) {
         this.name             = name;
-        this.out              = new BufferedWriter(new OutputStreamWriter(out));
+        this.out              = new FrameWriter(out, messageSeparator);
+        this.messageSeparator = messageSeparator;
+        addBuiltinHandlers();
+        startWriter();
+        incoming = new IncomingMessagesThread(name, in);
+        send_peer_features();
+        send_peer_enter();
+    }
+
+    public ProtocolHandler(String name, SocketChannel channel, NioTransport transport, char messageSeparator) {
+        NioTransport.Connection connection = transport.connection(channel, this, messageSeparator);
+        this.name             = name;
+        this.out              = new FrameWriter(connection.outputStream(), messageSeparator);
         this.messageSeparator = messageSeparator;
+        addBuiltinHandlers();
+        startWriter();
+        incoming = connection;
+        // inline handlers would run on the selector thread, where one slow handler stalls every connection of that thread
+        dispatcher = HandlerDispatcher.ofDefault(HandlerDispatcher.Order.PER_PEER);
+        send_peer_features();
+        send_peer_enter();
+    }
+
+    private void startWriter() {
+        writer.setName("ProtocolHandler-writer-" + name);
+        writer.start();
+    }
+
+    private void addBuiltinHandlers() {
         add(MessageHandler.of(REMOTE_ERROR_MESSAGE_KEY, m -> addProblem(new RemoteException(((Map<?, ?>) m.json()).get("message").toString()))));
         add(MessageHandler.of(PEER_ENTER_MESSAGE_KEY, this::peerEnter));
         add(MessageHandler.of(PEER_LEAVE_MESSAGE_KEY, this::peerLeave));
-        inThread = new IncomingMessagesThread(name, in);
-        send_peer_enter();
+        add(MessageHandler.of(PEER_FEATURES_MESSAGE_KEY, this::peerFeatures));
     }
 
     public void start() {
-        inThread.start();
+        incoming.start();
     }
 
     protected void peerLeave(Message m) {
         synchronized (peerMap) {
             peerMap.remove(m.senderUuid());
         }
+        dispatcher.peerLeft(m.senderUuid());
+        correlatingPeers.remove(m.senderUuid());
+        pendingRequests.values().forEach(PendingRequest::completeIfAllAnswered);
+    }
+
+    private void peerFeatures(Message m) {
+        if (m.json() instanceof List<?> features && features.contains(CORRELATION_FEATURE)) {
+            correlatingPeers.add(m.senderUuid());
+        } else {
+            correlatingPeers.remove(m.senderUuid());
+        }
+    }
+
+    // text lines only carry a correlation when every peer can read it; binary frames always have room for it
+    private boolean peersCorrelate() {
+        synchronized (peerMap) {
+            return !peerMap.isEmpty() && correlatingPeers.containsAll(peerMap.keySet());
+        }
     }
 
     protected void peerEnter(Message m) {
@@ -103,17 +190,52 @@ public class ProtocolHandler {
         return uuid;
     }
 
+    // the output is drained and closed first, so that the $peer_leave and everything queued before it still go out
     public void shutdown() throws IOException {
-        send_peer_leave();
-        inThread.shutdown();
-        out.close();
+        try {
+            send_peer_leave();
+        } finally {
+            try {
+                closeOut();
+            } finally {
+                incoming.shutdown();
+            }
+        }
+    }
+
+    // the writer writes what is still queued and closes; sends that come later fail
+    private void closeOut() throws IOException {
+        synchronized (closeMark) {
+            if (!outClosed) {
+                outClosed = true;
+                outQueue.add(closeMark);
+                scheduleWriter();
+            }
+        }
+        try {
+            closeMark.written.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while closing");
+        }
     }
 
     protected void shutdownDone() {
     }
 
     protected boolean isShutdown() {
-        return !inThread.isAlive();
+        return !incoming.isAlive();
+    }
+
+    // best set before start(): messages that are still being handled by the previous dispatcher are not waited for
+    public void setDispatcher(HandlerDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    public HandlerDispatcher getDispatcher() {
+        return dispatcher;
     }
 
     public void add(MessageHandler h) {
@@ -186,6 +308,10 @@ public class ProtocolHandler {
         send(REMOTE_ERROR_MESSAGE_KEY, problem);
     }
 
+    private void send_peer_features() {
+        send(PEER_FEATURES_MESSAGE_KEY, List.of(CORRELATION_FEATURE));
+    }
+
     private void send_peer_enter() {
         send(PEER_ENTER_MESSAGE_KEY, name);
     }
@@ -194,41 +320,264 @@ public class ProtocolHandler {
         send(PEER_LEAVE_MESSAGE_KEY, name);
     }
 
+    // a handler that answers a request() with send() on the answer keyword of its MessageHandler is correlated automatically;
+    // the message is only queued: a failure to write it is kept as a problem, see throwIfProblems() and submit()
     public void send(String keyword, Object payload) {
-        synchronized (out) {
+        submit(keyword, payload).exceptionally(e -> {
+            addProblem(e);
+            return null;
+        });
+    }
+
+    // the same as send(), for a sender that needs to know that the message was written: the future completes when it is
+    // written and flushed, or with the failure
+    public CompletableFuture<Void> submit(String keyword, Object payload) {
+        Answering a = ANSWERING.get();
+        return send(keyword, payload, a != null && a.handler == this && keyword.equals(a.answerKeyword) ? -a.correlationId : 0);
+    }
+
+    // answers a request() from a handler that does not answer inside handle()
+    public void reply(Message request, String answerKeyword, Object payload) {
+        send(answerKeyword, payload, -request.correlationId()).exceptionally(e -> {
+            addProblem(e);
+            return null;
+        });
+    }
+
+    private CompletableFuture<Void> send(String keyword, Object payload, long correlation) {
+        String json    = ToJson.toJson(payload);
+        byte[] encoded = out.encode(keyword, uuid, json);
+        if (correlation != 0 && encoded == null && !peersCorrelate()) {
+            // an older peer would take the mark and id for part of the keyword; its answer is matched without them
+            correlation = 0;
+        }
+        if (encoded == null && (keyword.indexOf(messageSeparator) >= 0 || uuid.indexOf(messageSeparator) >= 0 || json.indexOf(messageSeparator) >= 0)) {
+            throw new RuntimeException("ProtocolHandler can not send messages with an embedded message separator '" + messageSeparator + "': " + keyword + PROTOCOL_SEPARATOR + uuid + PROTOCOL_SEPARATOR + json);
+        }
+        if (outClosed) {
+            throw new RuntimeException("problem during send()", new IOException("Stream closed"));
+        }
+        Outgoing o = new Outgoing(keyword, json, encoded, correlation);
+        outQueue.add(o);
+        if (outDone) {
+            // closed since the check above and the writer is gone
+            failQueued();
+        } else {
+            scheduleWriter();
+        }
+        return o.written;
+    }
+
+    // the writer is a virtual thread of its own that sleeps while the queue is empty: only the sender that finds it asleep wakes it
+    private void scheduleWriter() {
+        if (writerAwake.compareAndSet(false, true)) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void writeQueued() {
+        while (!outDone) {
+            drain();
+            writerAwake.set(false);
+            if (outQueue.isEmpty()) {
+                // a sender that queues after this check finds the writer asleep and unparks it
+                LockSupport.park(this);
+            }
+            writerAwake.set(true);
+        }
+    }
+
+    // the queued messages are coalesced: there is a flush when the queue is empty, after MAX_SEND_BATCH chars or bytes,
+    // or when the oldest unflushed message waited MAX_SEND_DELAY_MS. Every message ends up done, with the failure of its
+    // write or flush if there was one.
+    private void drain() {
+        List<Outgoing> batch      = new ArrayList<>();
+        int            batchSize  = 0;
+        long           batchStart = 0;
+        for (Outgoing o; (o = outQueue.poll()) != null; ) {
+            if (o == closeMark) {
+                flush(batch);
+                batchSize = 0;
+                outDone   = true;
+                close(o);
+                failQueued();
+                continue;
+            }
+            if (batch.isEmpty()) {
+                batchStart = System.nanoTime();
+            }
+            batch.add(o);
+            try {
+                batchSize += write(o);
+            } catch (IOException | RuntimeException e) {
+                done(batch, e);
+                batchSize = 0;
+                continue;
+            }
+            if (MAX_SEND_BATCH <= batchSize || TimeUnit.MILLISECONDS.toNanos(MAX_SEND_DELAY_MS) <= System.nanoTime() - batchStart) {
+                flush(batch);
+                batchSize = 0;
+            }
+        }
+        flush(batch);
+    }
+
+    private void failQueued() {
+        for (Outgoing o; (o = outQueue.poll()) != null; ) {
+            o.done(new IOException("Stream closed"));
+        }
+    }
+
+    private void flush(List<Outgoing> batch) {
+        if (!batch.isEmpty()) {
+            Exception failure = null;
             try {
-                String msg = keyword
-                             + PROTOCOL_SEPARATOR
-                             + uuid
-                             + PROTOCOL_SEPARATOR
-                             + nextSendMessageNumber.getAndIncrement()
-                             + PROTOCOL_SEPARATOR
-                             + ToJson.toJson(payload)
-                             + messageSeparator;
-                if (TRACE) {
-                    String msgAligned = String.format("%" + (20 - msg.indexOf(PROTOCOL_SEPARATOR)) + "s%s", "", msg);
-                    System.err.printf(">>>%-50s>>>    SEND: %s%s", Thread.currentThread().getName(), msgAligned, msgAligned.endsWith("\n") ? "" : "\n");
-                }
-                if (msg.indexOf(messageSeparator) != msg.length() - 1) {
-                    throw new RuntimeException("ProtocolHandler can not send messages with an embedded message separator '" + messageSeparator + "': " + msg);
-                }
-                out.write(msg);
                 out.flush();
             } catch (IOException e) {
-                throw new RuntimeException("problem during send()", e);
+                failure = e;
             }
+            done(batch, failure);
         }
     }
 
-    private void received(Message message) {
+    private void close(Outgoing mark) {
+        try {
+            out.close();
+            mark.done(null);
+        } catch (IOException e) {
+            mark.done(e);
+        }
+    }
+
+    private static void done(List<Outgoing> batch, Exception failure) {
+        batch.forEach(o -> o.done(failure));
+        batch.clear();
+    }
+
+    // only called by the writer, so the message numbers go out in order
+    private int write(Outgoing o) throws IOException {
+        long number = nextSendMessageNumber.getAndIncrement();
+        if (TRACE) {
+            String msg        = o.keyword + (o.correlation == 0 ? "" : (0 < o.correlation ? REQUEST_MARK : ANSWER_MARK) + Long.toString(Math.abs(o.correlation))) + PROTOCOL_SEPARATOR + uuid + PROTOCOL_SEPARATOR + number + PROTOCOL_SEPARATOR + o.json;
+            String msgAligned = String.format("%" + (20 - msg.indexOf(PROTOCOL_SEPARATOR)) + "s%s", "", msg);
+            System.err.printf(">>>%-50s>>>    SEND: %s\n", Thread.currentThread().getName(), msgAligned);
+        }
+        return out.write(o.keyword, uuid, number, o.correlation, o.json, o.encoded);
+    }
+
+    // one message as it came in, without the message separator
+    void receivedLine(String line) {
+        String[] split = line.split("" + PROTOCOL_SEPARATOR, 4);
+        if (split.length != 4) {
+            send_remote_error(new IOException("non protocol line: " + line));
+        } else {
+            String keyword     = split[0];
+            long   correlation = 0;
+            int    mark        = Math.max(keyword.lastIndexOf(REQUEST_MARK), keyword.lastIndexOf(ANSWER_MARK));
+            if (0 < mark && isCorrelationId(keyword, mark + 1) && correlatingPeers.contains(split[1])) {
+                correlation = Long.parseLong(keyword, mark + 1, keyword.length(), 10);
+                correlation = keyword.charAt(mark) == REQUEST_MARK ? correlation : -correlation;
+                keyword     = keyword.substring(0, mark);
+            }
+            receivedFrame(keyword, split[1], Long.parseLong(split[2]), correlation, split[3]);
+        }
+    }
+
+    private static boolean isCorrelationId(String s, int from) {
+        if (from == s.length() || 18 < s.length() - from) {
+            return false;
+        }
+        for (int i = from; i < s.length(); i++) {
+            if (s.charAt(i) < '0' || '9' < s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // one message as it came in, from a text line or a binary frame; a negative correlation marks an answer to a request()
+    void receivedFrame(String keyword, String senderUuid, long senderMessageNumber, long correlation, String json) {
+        long    number  = nextReceivedMessageNumber.getAndIncrement();
+        Message message = new MessageImpl(keyword, senderUuid, senderMessageNumber, number, FromJsonListMap.fromJson(json), Math.abs(correlation));
+        remember(message);
+        boolean answer = correlation < 0 ? answers(pendingRequests.get(-correlation), message) : correlation == 0 && answersOldest(message);
+        if (!answer) {
+            received(message);
+        }
+    }
+
+    private static boolean answers(PendingRequest pending, Message message) {
+        return pending != null && pending.answerKeyword.equals(message.keyword()) && pending.answered(message);
+    }
+
+    // an older peer answers without correlation: its answer goes to the oldest request that still waits for this keyword
+    // from this peer. A peer that correlates answers with a correlation, its other messages go to the handlers.
+    private boolean answersOldest(Message message) {
+        Deque<PendingRequest> requests = uncorrelatedRequests.get(message.keyword());
+        if (requests == null || correlatingPeers.contains(message.senderUuid())) {
+            return false;
+        }
+        for (PendingRequest pending : requests) {
+            if (pending.answered(message)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // called when reading the incoming messages ended in a Throwable, after which no more messages are read
+    void receiveFailed(Throwable e) {
+        e.printStackTrace();
+        try {
+            send_remote_error(e);
+        } catch (Throwable e2) {
+            // out of solutions....
+            e2.printStackTrace();
+        }
+    }
+
+    private void remember(Message message) {
         synchronized (lastMessagesMap) {
             Map<String, Message> peer2messageMap = lastMessagesMap.computeIfAbsent(message.keyword(), k -> new HashMap<>());
             peer2messageMap.put(message.senderUuid(), message);
         }
+    }
 
+    private void received(Message message) {
         MessageHandler h = getMessageHandler(message.keyword());
         if (h != null) {
+            HandlerDispatcher d = dispatcher;
+            // the built-in messages are handled inline, so that the peerMap is up to date for the messages that follow
+            if (d.getOrder() == HandlerDispatcher.Order.INLINE || isBuiltin(message.keyword())) {
+                handle(h, message);
+            } else {
+                d.dispatch(message, () -> {
+                    try {
+                        handle(h, message);
+                    } catch (Throwable e) {
+                        // a handler that fails on the executor can not stop the reading, so it is reported like a failed read
+                        receiveFailed(e);
+                    }
+                });
+            }
+        }
+    }
+
+    private static boolean isBuiltin(String keyword) {
+        return keyword.equals(PEER_ENTER_MESSAGE_KEY) || keyword.equals(PEER_LEAVE_MESSAGE_KEY) || keyword.equals(REMOTE_ERROR_MESSAGE_KEY) || keyword.equals(PEER_FEATURES_MESSAGE_KEY);
+    }
+
+    private void handle(MessageHandler h, Message message) {
+        if (message.correlationId() == 0 || h.answerKey() == null) {
             h.handle(message);
+        } else {
+            Answering outer = ANSWERING.get();
+            ANSWERING.set(new Answering(this, h.answerKey(), message.correlationId()));
+            try {
+                h.handle(message);
+            } finally {
+                ANSWERING.set(outer);
+            }
         }
     }
 
@@ -261,64 +610,132 @@ public class ProtocolHandler {
     }
 
     public Map<String, Message> sendAndReceiveMulti(String keyword, String answerKeyword, Object payload) {
+        try {
+            return request(keyword, answerKeyword, payload).get();
+        } catch (Exception e) {
+            throw new RuntimeException("problem during wait for answer", e);
+        }
+    }
+
+    public CompletableFuture<Map<String, Message>> request(String keyword, String answerKeyword, Object payload) {
+        return request(keyword, answerKeyword, payload, null);
+    }
+
+    // sends a request that every peer answers with the answerKeyword; the answers are matched by a correlation id,
+    // so any number of requests can be outstanding. Completes with the answer of every peer, or with a
+    // TimeoutException when a timeout is given and not all answers are in by then.
+    public CompletableFuture<Map<String, Message>> request(String keyword, String answerKeyword, Object payload, Duration timeout) {
         if (answerKeyword == null || answerKeyword.length() == 0) {
             throw new RuntimeException("answerKeyword should not be empty");
         }
-        AnswerMessageHandler h = new AnswerMessageHandler(answerKeyword);
-        add(h);
-        send(keyword, payload);
-        return h.awaitAnswer();
+        long                  id      = nextCorrelationId.getAndIncrement();
+        PendingRequest        pending = new PendingRequest(answerKeyword, getPeerMap().keySet());
+        Deque<PendingRequest> fifo    = uncorrelatedRequests.computeIfAbsent(answerKeyword, k -> new ConcurrentLinkedDeque<>());
+        pendingRequests.put(id, pending);
+        fifo.addLast(pending);
+        pending.future.whenComplete((r, e) -> {
+            pendingRequests.remove(id);
+            fifo.remove(pending);
+        });
+        if (timeout != null) {
+            pending.future.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+        try {
+            // a request that could not be written is not answered
+            send(keyword, payload, id).exceptionally(e -> {
+                pending.future.completeExceptionally(new RuntimeException("problem during send()", e));
+                return null;
+            });
+        } catch (RuntimeException e) {
+            pending.future.completeExceptionally(e);
+            throw e;
+        }
+        return pending.future;
     }
 
-    private class AnswerMessageHandler implements MessageHandler {
+    private class PendingRequest {
         private final String                                  answerKeyword;
-        private final CompletableFuture<Map<String, Message>> syncer    = new CompletableFuture<>();
-        private       Map<String, Message>                    answerMap = new HashMap<>();
+        private final CompletableFuture<Map<String, Message>> future  = new CompletableFuture<>();
+        private final Set<String>                             expected; // null: any peer that is present
+        private final Map<String, Message>                    answers = new HashMap<>();
 
-        public AnswerMessageHandler(String answerKeyword) {
+        PendingRequest(String answerKeyword, Set<String> peers) {
             this.answerKeyword = answerKeyword;
+            this.expected      = peers.isEmpty() ? null : Set.copyOf(peers);
         }
 
-        @Override
-        public String requestKey() {
-            return answerKeyword;
+        // false when this peer was not asked or already answered
+        synchronized boolean answered(Message message) {
+            String sender = message.senderUuid();
+            if (future.isDone() || answers.containsKey(sender) || (expected != null && !expected.contains(sender))) {
+                return false;
+            }
+            answers.put(message.senderUuid(), message);
+            completeIfAllAnswered();
+            return true;
         }
 
-        @Override
-        public String answerKey() {
-            return null;
+        // peers that left are not waited for
+        synchronized void completeIfAllAnswered() {
+            Set<String> peers = new HashSet<>(getPeerMap().keySet());
+            if (expected != null) {
+                peers.retainAll(expected);
+            }
+            answers.keySet().retainAll(peers);
+            if (answers.size() == peers.size()) {
+                future.complete(new HashMap<>(answers));
+            }
         }
+    }
 
-        @Override
-        public void handle(Message message) {
-            Map<String, String> newPeerMap = getPeerMap();
-            answerMap = answerMap.entrySet().stream().filter(e -> newPeerMap.containsKey(e.getKey())).collect(Collectors.toMap(Entry::getKey, Entry::getValue));
-            answerMap.put(message.senderUuid(), message);
-            if (answerMap.size() == newPeerMap.size()) {
-                remove(answerKeyword);
-                syncer.complete(answerMap);
-            }
+    private record Answering(ProtocolHandler handler, String answerKeyword, long correlationId) {
+    }
+
+    private static final class Outgoing {
+        private final String                  keyword;
+        private final String                  json;
+        private final byte[]                  encoded; // only with LENGTH_PREFIXED_FRAMES
+        private final long                    correlation;
+        private final CompletableFuture<Void> written = new CompletableFuture<>();
+
+        Outgoing(String keyword, String json, byte[] encoded, long correlation) {
+            this.keyword     = keyword;
+            this.json        = json;
+            this.encoded     = encoded;
+            this.correlation = correlation;
         }
 
-        public Map<String, Message> awaitAnswer() {
-            try {
-                return syncer.get();
-            } catch (Exception e) {
-                throw new RuntimeException("problem during wait for answer", e);
+        void done(Exception failure) {
+            if (failure == null) {
+                written.complete(null);
+            } else {
+                written.completeExceptionally(failure);
             }
         }
     }
 
-    private class IncomingMessagesThread extends Thread {
+    // the source of the incoming messages: a thread per stream or a connection on a NioTransport
+    interface Incoming {
+        void start();
+
+        void shutdown() throws IOException;
+
+        boolean isAlive();
+    }
+
+    private class IncomingMessagesThread extends Thread implements Incoming {
         private final InputStream in;
+        private final FrameReader frames;
         private       boolean     stop;
 
         public IncomingMessagesThread(String id, InputStream in) {
             super("ProtocolHandler-" + id);
             this.in = in;
+            frames  = new FrameReader(in, messageSeparator);
             setDaemon(true);
         }
 
+        @Override
         public void shutdown() throws IOException {
             //System.err.println("shutdown... " + getName());
             stop = true;
@@ -327,22 +744,29 @@ public class ProtocolHandler {
             //System.err.println("shutdown!!! " + getName());
         }
 
+        private void closeIn() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // already gone
+            }
+        }
+
         @Override
         public void run() {
             try {
                 while (!stop) {
                     try {
-                        String line = readLine();
-                        if (TRACE) {
-                            System.err.printf(">>>%-50s>>>    READ: %s\n", getName(), line == null ? "<EOF>" : String.format("%" + (20 - line.indexOf(PROTOCOL_SEPARATOR)) + "s%s", "", line));
-                        }
-                        stop = line == null;
-                        if (!stop) {
-                            String[] split = line.split("" + PROTOCOL_SEPARATOR, 4);
-                            if (split.length != 4) {
-                                send_remote_error(new IOException("non protocol line: " + line));
-                            } else {
-                                received(new MessageImpl(split[0], split[1], Long.parseLong(split[2]), nextReceivedMessageNumber.getAndIncrement(), FromJsonListMap.fromJson(split[3])));
+                        if (messageSeparator == LENGTH_PREFIXED_FRAMES) {
+                            stop = !frames.readBinaryFrame(ProtocolHandler.this);
+                        } else {
+                            String line = frames.readFrame();
+                            if (TRACE) {
+                                System.err.printf(">>>%-50s>>>    READ: %s\n", getName(), line == null ? "<EOF>" : String.format("%" + (20 - line.indexOf(PROTOCOL_SEPARATOR)) + "s%s", "", line));
+                            }
+                            stop = line == null;
+                            if (!stop) {
+                                receivedLine(line);
                             }
                         }
                     } catch (InterruptedIOException e) {
@@ -350,33 +774,25 @@ public class ProtocolHandler {
                             System.err.printf(">>>%-50s>>>    READ: <interrupted!>\n", getName());
                         }
                         stop = true;
+                    } catch (StreamCorruptedException e) {
+                        // the frame is not consumed, reading on would fail on the same bytes forever
+                        stop = true;
+                        receiveFailed(e);
+                        closeIn();
                     } catch (IOException e) {
-                        e.printStackTrace();
-                        send_remote_error(e);
+                        if (outClosed) {
+                            // our own shutdown closed the connection
+                            stop = true;
+                        } else {
+                            e.printStackTrace();
+                            send_remote_error(e);
+                        }
                     }
                 }
             } catch (Throwable e) {
-                e.printStackTrace();
-                try {
-                    send_remote_error(e);
-                } catch (Throwable e2) {
-                    // out of solutions....
-                    e2.printStackTrace();
-                }
+                receiveFailed(e);
             }
             shutdownDone();
         }
-
-        private String readLine() throws IOException {
-            StringBuilder b = new StringBuilder();
-            int           c;
-            while ((c = in.read()) != messageSeparator && c != -1) {
-                b.append((char) c);
-            }
-            if (c == -1 && b.length() == 0) {
-                return null;
-            }
-            return b.toString();
-        }
     }
 }
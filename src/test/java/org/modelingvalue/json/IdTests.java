@@ -158,6 +158,33 @@ public class IdTests {
         Assertions.assertEquals(testObject.fingerprint(new B.Fingerprinter()), parsed.fingerprint(new B.Fingerprinter()));
     }
 
+    @Test
+    public void minimalBFrozenConfigTest() throws NoSuchFieldException {
+        B testObject = B.makeMinimalModel();
+
+        Config config = new Config();
+        config.addJsonIdAnnotation(B.class.getDeclaredField("id"));
+        Config.Frozen frozen = config.freeze();
+        Assertions.assertSame(frozen, config.freeze());
+        Assertions.assertNotNull(frozen.getAnnotation(B.class.getDeclaredField("id"), JsonId.class));
+
+        // built apart but with the same settings and annotations: equal, so usable as a key for shared metadata
+        Config other = new Config();
+        other.addJsonIdAnnotation(B.class.getDeclaredField("id"));
+        Assertions.assertEquals(frozen, other.freeze());
+        Assertions.assertEquals(frozen.hashCode(), other.freeze().hashCode());
+
+        // changing the Config gives a new snapshot, the old one stays as it was
+        other.ignoreNullValues = true;
+        Assertions.assertNotEquals(frozen, other.freeze());
+        Assertions.assertFalse(frozen.ignoreNullValues());
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> frozen.extraFieldAnnotations().clear());
+
+        String rendered = new ToJson(testObject, config).render();
+        Assertions.assertEquals(EXPECTED_MINIMAL, rendered);
+        Assertions.assertEquals(rendered, new ToJson(testObject, config).render());
+    }
+
     @Test
     public void ok1Test() {
         FromJsonGeneric.fromJson(A.class, MINIMAL_OK1);
@@ -197,6 +224,46 @@ public class IdTests {
         Assertions.assertEquals(testObject.fingerprint(new Fingerprinter()), parsed.fingerprint(new Fingerprinter()));
     }
 
+    @Test
+    public void reRenderTest() {
+        A      testObject = A.makeCyclicModel();
+        ToJson toJson     = new ToJson(testObject);
+        Assertions.assertEquals(EXPECTED_CYCLIC, toJson.render());
+        Assertions.assertEquals(EXPECTED_CYCLIC, toJson.render());
+    }
+
+    @Test
+    public void parallelTest() {
+        List<A> many = new ArrayList<>();
+        for (int i = 0; i < 30_000; i++) {
+            many.add(A.makeCyclicModel());
+            many.add(many.get(i / 2));
+        }
+        Config config = new Config();
+        config.parallel = true;
+        Assertions.assertEquals(new ToJson(many).render(), new ToJson(many, config).render());
+    }
+
+    @Test
+    public void identitySeenSetTest() {
+        IdentitySeenSet seen    = new IdentitySeenSet();
+        List<String>    objects = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            objects.add(new String("same"));
+        }
+        for (String o : objects) {
+            Assertions.assertTrue(seen.add(o));
+        }
+        for (String o : objects) {
+            Assertions.assertFalse(seen.add(o));
+            Assertions.assertTrue(seen.contains(o));
+        }
+        Assertions.assertEquals(objects.size(), seen.size());
+        seen.clear();
+        Assertions.assertEquals(0, seen.size());
+        Assertions.assertFalse(seen.contains(objects.get(0)));
+    }
+
     @Test
     public void cyclicTest() {
         A testObject = A.makeCyclicModel();
@@ -23,6 +23,8 @@ package org.modelingvalue.json;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.RepeatedTest;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 import static org.modelingvalue.json.Json.fromJson;
@@ -160,4 +162,50 @@ public class JsonIntrospectionTests {
                                         + "}", toJson(new ProbeB()));
         Assertions.assertEquals(new ProbeB(), fromJson(ProbeB.class, toJson(new ProbeB())));
     }
+
+    @RepeatedTest(1)
+    public void keysFromJson() {
+        ProbeA a = fromJson(ProbeA.class, "{\"\\u0061ap01\":201,\"aap02\" : 202,\"aap99\":299}");
+        Assertions.assertEquals(201, a.aap01);
+        Assertions.assertEquals(202, a.aap02);
+        Assertions.assertEquals(299, a.aap99);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> fromJson(ProbeA.class, "{\"aap0\":1}"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> fromJson(ProbeA.class, "{\"aap011\":1}"));
+    }
+
+    @SuppressWarnings({"unused", "FieldMayBeFinal"})
+    public static class ProbeSFO {
+        private String name;
+
+        public ProbeSFO(String name) {
+            this.name = name;
+        }
+    }
+
+    @SuppressWarnings({"unused", "FieldMayBeFinal"})
+    public static class ProbeNoSFO {
+        private String name;
+
+        public ProbeNoSFO(String name) {
+            this.name = name;
+        }
+
+        public ProbeNoSFO() {
+            this("none");
+        }
+    }
+
+    @RepeatedTest(1)
+    public void sfoToJson() {
+        Config ignoring = new Config();
+        ignoring.ignoreSFOs = true;
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertEquals("\"aap\"", toJson(new ProbeSFO("aap")));
+            Assertions.assertEquals("\"noot\"", toJson(new ProbeSFO("noot")));
+            Assertions.assertEquals("null", toJson(new ProbeSFO(null)));
+            Assertions.assertEquals("[\"aap\",{\"name\":\"noot\"}]", toJson(List.of(new ProbeSFO("aap"), new ProbeNoSFO("noot"))));
+            Assertions.assertEquals("{\"k\":\"mies\"}", toJson(Map.of("k", new ProbeSFO("mies"))));
+            Assertions.assertEquals("{\"name\":\"aap\"}", ToJson.toJson(new ProbeSFO("aap"), ignoring));
+        }
+    }
 }
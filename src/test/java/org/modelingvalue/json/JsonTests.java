@@ -23,14 +23,27 @@ package org.modelingvalue.json;
 import org.junit.jupiter.api.RepeatedTest;
 import org.junit.jupiter.api.Test;
 import org.modelingvalue.json.TestObjects.AAA;
+import org.modelingvalue.json.TestObjects.Abstract;
 import org.modelingvalue.json.TestObjects.SUB;
 import org.modelingvalue.json.TestObjects.XXX;
 import org.modelingvalue.json.TestObjects.YYY;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 import java.util.AbstractMap.SimpleEntry;
+import java.util.Map.Entry;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.modelingvalue.json.Json.fromJson;
@@ -60,6 +73,31 @@ public class JsonTests {
         assertEquals(TestObjects.quoted("blabla-·-\\u0000\\\"-\\t\\r\\n\\f\\b/\\\\-\\u2022"), toJson("blabla-\u00b7-\000\"-\t\r\n\f\b/\\-\u2022"));
     }
 
+    @Test
+    public void everyCharToJson() {
+        for (int i = 0; i <= Character.MAX_VALUE; i++) {
+            char   ch       = (char) i;
+            String expected = expectedEscape(ch);
+            assertEquals(TestObjects.quoted(expected), toJson(ch), "char " + i);
+            assertEquals(TestObjects.quoted("ab" + expected + "cd" + expected), toJson("ab" + ch + "cd" + ch), "char " + i);
+            assertEquals("x" + ch + "y", fromJson(toJson("x" + ch + "y")), "char " + i);
+        }
+    }
+
+    // the escaping as it was done before the lookup table was introduced:
+    private static String expectedEscape(char ch) {
+        return switch (ch) {
+            case '"' -> "\\\"";
+            case '\\' -> "\\\\";
+            case '\b' -> "\\b";
+            case '\f' -> "\\f";
+            case '\n' -> "\\n";
+            case '\r' -> "\\r";
+            case '\t' -> "\\t";
+            default -> ch <= '\u001F' || ('\u007F' <= ch && ch <= '\u009F') || ('\u2000' <= ch && ch <= '\u20FF') ? String.format("\\u%04X", (int) ch) : String.valueOf(ch);
+        };
+    }
+
     @RepeatedTest(1)
     public void listsToJson() {
         assertEquals("[]", toJson(new byte[]{}));
@@ -107,6 +145,247 @@ public class JsonTests {
                      toJson(Map.of(Currency.getInstance("EUR"), Currency.getInstance("EUR"), Currency.getInstance("SVC"), new Object())));
     }
 
+    @Test
+    public void typeHooksToJson() {
+        class Pair {
+            @SuppressWarnings("unused")
+            final int a = 1, b = 2;
+        }
+        ToJson hooked = new ToJson(List.of(new Pair(), new HashMap<>(Map.of("x", 1)), 3)) {
+            @Override
+            protected boolean isMapType(Object o) {
+                return false;
+            }
+
+            @Override
+            protected boolean isIterableType(Object o) {
+                return o instanceof Pair || o instanceof List;
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            protected Iterator<Object> getArrayIterator(Object o) {
+                return o instanceof Pair p ? List.<Object>of(p.a, p.b).iterator() : super.getArrayIterator(o);
+            }
+        };
+        assertEquals("[[1,2],{\"empty\":false},3]", hooked.render());
+        assertEquals("[{\"a\":1,\"b\":2},{\"x\":1},3]", toJson(List.of(new Pair(), Map.of("x", 1), 3)));
+
+        // only an exact signature overrides a hook: an overload does not, a covariant or inherited override does
+        class Overload extends ToJson {
+            Overload(Object o) {
+                super(o);
+            }
+
+            @SuppressWarnings("unused")
+            protected void jsonFromString(CharSequence s) {
+            }
+        }
+        class Covariant extends ToJson {
+            Covariant(Object o) {
+                super(o);
+            }
+
+            @Override
+            protected ListIterator<Object> getArrayIterator(Object o) {
+                return new ArrayList<Object>((Collection<?>) o).listIterator();
+            }
+        }
+        class Inherited extends Covariant {
+            Inherited(Object o) {
+                super(o);
+            }
+        }
+        assertEquals(Set.of(), ToJson.OVERRIDDEN_HOOKS.get(Overload.class));
+        assertEquals(Set.of("getArrayIterator"), ToJson.OVERRIDDEN_HOOKS.get(Covariant.class));
+        assertEquals(Set.of("getArrayIterator"), ToJson.OVERRIDDEN_HOOKS.get(Inherited.class));
+        assertEquals("{\"a\":\"x\"}", new Overload(Map.of("a", "x")).render());
+        assertEquals("[1,2]", new Inherited(List.of(1, 2)).render());
+    }
+
+    @Test
+    public void lazyToJson() throws IOException {
+        assertEquals("[1,2,3]", toJson(List.of(1, 2, 3).iterator()));
+        assertEquals("[1,2,3]", toJson(List.of(1, 2, 3).spliterator()));
+        assertEquals("[1,2,3]", toJson(IntStream.rangeClosed(1, 3)));
+        assertEquals("{\"s\":[\"a\",\"b\"]}", toJson(Map.of("s", Stream.of("a", "b"))));
+
+        // the first elements are written before the last ones are even produced
+        StringWriter  w       = new StringWriter();
+        AtomicInteger written = new AtomicInteger(-1);
+        AtomicBoolean closed  = new AtomicBoolean();
+        Stream<String> cursor = IntStream.range(0, 100_000).mapToObj(i -> {
+            if (i == 99_999) {
+                written.set(w.getBuffer().length());
+            }
+            return "row-" + i;
+        }).onClose(() -> closed.set(true));
+        new ToJson(cursor).render(w);
+        assertTrue(100_000 < written.get());
+        assertTrue(closed.get());
+        assertEquals(toJson(IntStream.range(0, 100_000).mapToObj(i -> "row-" + i).toList()), w.toString());
+    }
+
+    @Test
+    public void parallelToJson() {
+        List<Object> big = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            big.add(i % 7 == 0 ? null : Map.of("i", i, "a", new int[]{i, i + 1}, "l", List.of(i)));
+        }
+        Object[] objects = big.toArray();
+        long[]   longs   = new long[30_000];
+        Arrays.setAll(longs, i -> i * 31L);
+        String[] strings = new String[30_000];
+        Arrays.setAll(strings, i -> "s\"" + i);
+
+        Config parallel = new Config();
+        parallel.parallel = true;
+        Config parallelNoNulls = new Config();
+        parallelNoNulls.parallel         = true;
+        parallelNoNulls.ignoreNullValues = true;
+        Config noNulls = new Config();
+        noNulls.ignoreNullValues = true;
+
+        assertEquals(toJson(big), ToJson.toJson(big, parallel));
+        assertEquals(ToJson.toJson(big, noNulls), ToJson.toJson(big, parallelNoNulls));
+        assertEquals(toJson(objects), ToJson.toJson(objects, parallel));
+        assertEquals(toJson(longs), ToJson.toJson(longs, parallel));
+        assertEquals(toJson(strings), ToJson.toJson(strings, parallel));
+
+        // subclasses opt in by making their own workers, level and index are the same as when rendering sequentially
+        class Tracing extends ToJson {
+            final Config              config;
+            final Map<Object, String> positions;
+
+            Tracing(Config config, Map<Object, String> positions) {
+                super(big, config);
+                this.config    = config;
+                this.positions = positions;
+            }
+
+            @Override
+            protected Object filter(Object o) {
+                if (o instanceof List<?> l && l.size() == 1) {
+                    positions.put(l.get(0), getLevel() + ":" + getIndex());
+                }
+                return o;
+            }
+
+            @Override
+            protected ToJson newWorker() {
+                return new Tracing(config, positions);
+            }
+        }
+        Tracing sequential = new Tracing(new Config(), new HashMap<>());
+        Tracing inParallel = new Tracing(parallel, new ConcurrentHashMap<>());
+        assertEquals(sequential.render(), inParallel.render());
+        assertEquals(sequential.positions, inParallel.positions);
+    }
+
+    @Test
+    public void mapOrderToJson() {
+        Map<Object, Object> ints = new LinkedHashMap<>();
+        ints.put(2, "b");
+        ints.put(10, "c");
+        ints.put(1, "a");
+        TreeMap<String, Integer> reversed = new TreeMap<>(Comparator.reverseOrder());
+        reversed.putAll(Map.of("a", 1, "b", 2, "c", 3));
+        TreeMap<String, Integer> natural = new TreeMap<>(reversed);
+
+        assertEquals("{\"1\":\"a\",\"10\":\"c\",\"2\":\"b\"}", toJson(ints));
+        assertEquals("{\"a\":1,\"b\":2,\"c\":3}", toJson(reversed));
+        assertEquals("{\"a\":1,\"b\":2,\"c\":3}", toJson(natural));
+
+        Config insertion = new Config();
+        insertion.mapOrder = Config.MapOrder.INSERTION;
+        assertEquals("{\"2\":\"b\",\"10\":\"c\",\"1\":\"a\"}", ToJson.toJson(ints, insertion));
+        assertEquals("{\"c\":3,\"b\":2,\"a\":1}", ToJson.toJson(reversed, insertion));
+
+        Config sortedMapOrder = new Config();
+        sortedMapOrder.mapOrder = Config.MapOrder.SORTED_MAP_ORDER;
+        assertEquals("{\"1\":\"a\",\"10\":\"c\",\"2\":\"b\"}", ToJson.toJson(ints, sortedMapOrder));
+        assertEquals("{\"c\":3,\"b\":2,\"a\":1}", ToJson.toJson(reversed, sortedMapOrder));
+
+        // a changed order is picked up by the next render with the same Config
+        insertion.mapOrder = Config.MapOrder.SORTED;
+        assertEquals("{\"1\":\"a\",\"10\":\"c\",\"2\":\"b\"}", ToJson.toJson(ints, insertion));
+        assertEquals("{\"a\":1,\"b\":2,\"c\":3}", ToJson.toJson(reversed, insertion));
+    }
+
+    @Test
+    public void introspectionToJson() {
+        SUB sub = new SUB(1, new SUB(2, null));
+
+        Config config = new Config();
+        config.includeClassNameInIntrospection = true;
+        config.ignoreNullValues                = true;
+        assertEquals("{\"~className\":\"org.modelingvalue.json.TestObjects$SUB\",\"id\":1,\"sub\":{\"~className\":\"org.modelingvalue.json.TestObjects$SUB\",\"id\":2}}", ToJson.toJson(sub, config));
+
+        ToJson hooked = new ToJson(sub) {
+            @Override
+            protected Iterator<Entry<Object, Object>> getIntrospectionIterator(Object o) {
+                return List.<Entry<Object, Object>>of(new SimpleEntry<>("sub-id", ((SUB) o).id)).iterator();
+            }
+        };
+        assertEquals("{\"sub-id\":1}", hooked.render());
+
+        ToJson upper = new ToJson(sub) {
+            @Override
+            protected String stringFromKey(Object key) {
+                return key.toString().toUpperCase();
+            }
+        };
+        assertEquals("{\"ID\":1,\"SUB\":{\"ID\":2,\"SUB\":null}}", upper.render());
+    }
+
+    @Test
+    public void streamingToJson() throws IOException {
+        List<Object> big = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            big.add(Map.of("i", i, "s", "blabla-·-\"-\u2022-" + i, "a", new int[]{i, i + 1}));
+        }
+        String expected = toJson(big);
+
+        StringWriter w = new StringWriter();
+        new ToJson(big).render(w);
+        assertEquals(expected, w.toString());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ToJson(big).render(out);
+        assertEquals(expected, out.toString(StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream channelOut = new ByteArrayOutputStream();
+        new ToJson(big).render(Channels.newChannel(channelOut));
+        assertEquals(expected, channelOut.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void utf8ToJson() {
+        List<Object> big = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            big.add(List.of(i, "aé€\uD83D\uDE00-" + i));
+        }
+        byte[] expected = toJson(big).getBytes(StandardCharsets.UTF_8);
+
+        assertArrayEquals(expected, new ToJson(big).renderUtf8());
+
+        ByteBuffer pooled = new ToJson(big).renderUtf8Pooled();
+        // other renders on this thread leave the pooled result alone
+        assertArrayEquals("[1,\"x\"]".getBytes(StandardCharsets.UTF_8), new ToJson(List.of(1, "x")).renderUtf8());
+        // a lone surrogate has no UTF-8 encoding, so it is escaped in the string
+        assertArrayEquals("[\"a\\uD800b\\uDC00\"]".getBytes(StandardCharsets.UTF_8), new ToJson(List.of("a\uD800b\uDC00")).renderUtf8());
+        // a pair that is split over two drains is still one code point
+        ToJsonSink.Utf8Sink split = ToJsonSink.Utf8Sink.acquire(false);
+        split.drain(new StringBuilder("\"\uD83D"));
+        split.drain(new StringBuilder("\uDE00\""));
+        split.flush();
+        assertArrayEquals("\"\uD83D\uDE00\"".getBytes(StandardCharsets.UTF_8), Arrays.copyOf(split.bytes(), split.size()));
+        split.release();
+        byte[] bytes = new byte[pooled.remaining()];
+        pooled.get(bytes);
+        assertArrayEquals(expected, bytes);
+    }
+
     @Test
     public void primitivesFromJson() {
         assertThrows(NullPointerException.class, () -> fromJson(null));
@@ -211,6 +490,28 @@ public class JsonTests {
         assertEquals(TestObjects.getTestObject1(), fromJson("   [\n  1,2,\n  {      \n\n\"three\"   \n:  \n3},[\r\t\n    \n    [\n      1,\n      2,\n      3\n    ]\n  ]\n]\n\n\n"));
     }
 
+    @Test
+    public void typedArraysFromJson() {
+        assertArrayEquals(new int[]{1, 2, 3}, fromJson(int[].class, "[1,2,3]"));
+        assertArrayEquals(new long[]{}, fromJson(long[].class, "[]"));
+        assertArrayEquals(new double[]{1.5, 2, -3e3}, fromJson(double[].class, "[1.5,2,-3e3]"));
+        assertArrayEquals(new float[]{1.5F, 2F}, fromJson(float[].class, "[1.5,2]"));
+        assertArrayEquals(new byte[]{1, -2, 127}, fromJson(byte[].class, "[1,-2,127]"));
+        assertArrayEquals(new boolean[]{true, false}, fromJson(boolean[].class, "[true,false]"));
+        assertArrayEquals(new char[]{'a', 'b'}, fromJson(char[].class, "[\"a\",\"b\"]"));
+        assertArrayEquals(new String[]{"a", null, "c"}, fromJson(String[].class, "[\"a\",null,\"c\"]"));
+        assertArrayEquals(new Integer[]{1, null, 3}, fromJson(Integer[].class, "[1,null,3]"));
+        assertArrayEquals(new int[][]{{1}, {}, {2, 3}}, fromJson(int[][].class, "[[1],[],[2,3]]"));
+        assertArrayEquals(new SUB[]{new SUB(1, null), new SUB(2, new SUB(3, null))}, fromJson(SUB[].class, "[{\"id\":1},{\"id\":2,\"sub\":{\"id\":3}}]"));
+
+        int[] big = new int[100_000];
+        Arrays.setAll(big, i -> i * 7);
+        assertArrayEquals(big, fromJson(int[].class, toJson(big)));
+
+        assertThrows(IllegalArgumentException.class, () -> fromJson(int[].class, "[1,null]"));
+        assertThrows(IllegalArgumentException.class, () -> fromJson(int[].class, "[1,true]"));
+    }
+
     @Test
     public void mapsFromJson() {
         assertThrows(IllegalArgumentException.class, () -> fromJson("{\"a\":1,\"b\":2,}"));
@@ -233,11 +534,10 @@ public class JsonTests {
                 "        \"shared_field\":4716" +
                 "    }" +
                 "}," +
-                // TODO
-                // "\"arrayOfAbstract\":[" +
-                // "    {\"$type\":\"org.modelingvalue.json.TestObjects$XXX# burp\",\"field\":3333,\"shared_field\":4713}," +
-                // "    {\"$type\":\"org.modelingvalue.json.TestObjects$YYY# why?\",\"field\":4444,\"shared_field\":4714}" +
-                // "],"+
+                "\"arrayOfAbstract\":[" +
+                "    {\"$type\":\"org.modelingvalue.json.TestObjects$XXX# burp\",\"field\":3333,\"shared_field\":4713}," +
+                "    {\"$type\":\"org.modelingvalue.json.TestObjects$YYY# why?\",\"field\":4444,\"shared_field\":4714}" +
+                "]," +
                 "\"b-o\":true," +
                 "\"b_y+t#e\":44," +
                 "\"bool\":true," +
@@ -311,12 +611,71 @@ public class JsonTests {
         assertEquals(1111, ((XXX) o.listOfAbstract.get(0)).field);
         assertEquals(2222, ((YYY) o.listOfAbstract.get(1)).field);
 
+        assertNotNull(o.arrayOfAbstract);
+        assertEquals(2, o.arrayOfAbstract.length);
+        assertTrue(o.arrayOfAbstract[0] instanceof XXX);
+        assertTrue(o.arrayOfAbstract[1] instanceof YYY);
+        assertEquals(4713, o.arrayOfAbstract[0].shared_field);
+        assertEquals(4714, o.arrayOfAbstract[1].shared_field);
+        assertEquals(3333, ((XXX) o.arrayOfAbstract[0]).field);
+        assertEquals(4444, ((YYY) o.arrayOfAbstract[1]).field);
+
         String json_2 = toJson(o);
         String json_3 = toJson(fromJson(AAA.class, json_2));
 
         assertEquals(json_2, json_3);
     }
 
+    @Test
+    public void memoizedClassSelectorFromJson() {
+        Config config = new Config();
+        config.memoizeClassSelectors = true;
+        String json = "[" +
+                "{\"$type\":\"org.modelingvalue.json.TestObjects$XXX\",\"field\":1}," +
+                "{\"$type\":\"org.modelingvalue.json.TestObjects$YYY\",\"field\":2}," +
+                "{\"$type\":\"org.modelingvalue.json.TestObjects$XXX\",\"field\":3,\"subAbstract\":{\"$type\":\"org.modelingvalue.json.TestObjects$YYY\",\"field\":4}}" +
+                "]";
+
+        Abstract[] a = FromJsonGeneric.fromJson(Abstract[].class, json, config);
+
+        assertEquals(3, a.length);
+        assertEquals(1, ((XXX) a[0]).field);
+        assertEquals(2, ((YYY) a[1]).field);
+        assertEquals(3, ((XXX) a[2]).field);
+        assertEquals(4, ((YYY) ((XXX) a[2]).subAbstract).field);
+        assertEquals(toJson(Json.fromJson(Abstract[].class, json)), toJson(a));
+
+        // the memo is shared by parses with an equal config, so every kind is selected once
+        String counted = "[{\"kind\":\"a\"},{\"kind\":\"b\"},{\"kind\":\"a\"},{\"kind\":\"b\"},{\"kind\":\"a\"}]";
+        Counted.SELECTIONS.set(0);
+        FromJsonGeneric.fromJson(Counted[].class, counted, config);
+        Counted[] c = FromJsonGeneric.fromJson(Counted[].class, counted, config);
+        assertEquals(2, Counted.SELECTIONS.get());
+        assertTrue(c[0] instanceof CountedA && c[1] instanceof CountedB && c[4] instanceof CountedA);
+
+        Counted.SELECTIONS.set(0);
+        FromJsonGeneric.fromJson(Counted[].class, counted);
+        assertEquals(5, Counted.SELECTIONS.get());
+    }
+
+    public static abstract class Counted {
+        static final AtomicInteger SELECTIONS = new AtomicInteger();
+
+        String kind;
+
+        @JsonClassSelector
+        public static Class<?> select(String name, Object value) {
+            SELECTIONS.incrementAndGet();
+            return "a".equals(value) ? CountedA.class : CountedB.class;
+        }
+    }
+
+    public static class CountedA extends Counted {
+    }
+
+    public static class CountedB extends Counted {
+    }
+
     @SuppressWarnings("unchecked")
     @Test
     public void bigNumbers() {
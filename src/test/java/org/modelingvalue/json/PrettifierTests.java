@@ -22,6 +22,13 @@ package org.modelingvalue.json;
 
 import org.junit.jupiter.api.RepeatedTest;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Currency;
 import java.util.List;
 import java.util.Map;
@@ -84,6 +91,80 @@ public class PrettifierTests {
                 prettyStrict(prettyStrict(prettyStrict(prettyStrict(toJson(TestObjects.getTestObject1())))))
         );
     }
+
+    @RepeatedTest(1)
+    public void prettyToJson() throws IOException {
+        List<Object> big = new ArrayList<>();
+        for (int i = 0; i < 30_000; i++) {
+            big.add(i % 3 == 0 ? List.of(i) : Map.of("i", i, "a", new int[]{i, i + 1}, "e", List.of(), "s", "x,[y]:{z}"));
+        }
+        List<Object> objects = List.of(List.of(), Map.of(), List.of(List.of()), Map.of("a", Map.of(), "b", List.of()), Map.of("EUR", 1.3), new int[]{1}, new String[]{"a", "b"},//
+                                       TestObjects.getTestObject1(), new TestObjects.SUB(1, new TestObjects.SUB(2, null)), big);
+
+        Config strict = Config.pretty();
+        strict.prettyStrict = true;
+        Config custom = new Config();
+        custom.prettyIndent     = "#";
+        custom.prettyEol        = "^";
+        custom.prettyAfterColon = "@";
+        Config parallel = Config.pretty();
+        parallel.parallel = true;
+        for (Object o : objects) {
+            String compact = toJson(o);
+            assertEquals(pretty(compact), Json.toPrettyJson(o));
+            assertEquals(prettyStrict(compact), ToJson.toJson(o, strict));
+            assertEquals(JsonPrettyfier.prettify(compact, "#", "^", "@", false), ToJson.toJson(o, custom));
+            assertEquals(pretty(compact), ToJson.toJson(o, parallel));
+
+            StringWriter w = new StringWriter();
+            new ToJson(o, Config.pretty()).render(w);
+            assertEquals(pretty(compact), w.toString());
+        }
+    }
+
+    @RepeatedTest(1)
+    public void prettyStreaming() throws IOException {
+        String json = JsonCustomTests.readData("test.json");
+
+        StringWriter w = new StringWriter();
+        JsonPrettyfier.pretty(new StringReader(json), w);
+        assertEquals(pretty(json), w.toString());
+
+        // deep and wide input stays linear
+        String deep = "[".repeat(100_000) + "]".repeat(100_000);
+        assertEquals(4 * 100_000 - 1, JsonPrettyfier.prettify(deep, "", "\n", " ", true).length());
+        String wide = "{\"a\":[" + "1,".repeat(1_000_000) + "1]}";
+        assertEquals(1_000_001 + 3, pretty(wide).chars().filter(c -> c == '\n').count());
+        assertEquals("[\n  \"a\\\"[,\",\n  {\n    \"b\": [\"c\"]\n  }\n]", pretty("[\"a\\\"[,\", {\"b\":[\"c\"]}]"));
+    }
+
+    @RepeatedTest(1)
+    public void terseBytesAndFiles() throws IOException {
+        String json = pretty(JsonCustomTests.readData("test.json")) + "\n[\"\\\\\", \" a \\\" b \", \"\u00e9 \u2022 \", {\"x\" :\t[ 1 , 2 ]}]\r\n";
+        String expected = JsonPrettyfier.prettify(json, null, null, null, true);
+        assertEquals(expected, terse(json));
+
+        byte[] bytes  = json.getBytes(StandardCharsets.UTF_8);
+        byte[] padded = new byte[bytes.length + 10];
+        System.arraycopy(bytes, 0, padded, 5, bytes.length);
+        int end = JsonMinifier.terse(padded, 5, 5 + bytes.length);
+        assertEquals(expected, new String(padded, 5, end - 5, StandardCharsets.UTF_8));
+
+        Path in  = Files.createTempFile("json-in", ".json");
+        Path out = Files.createTempFile("json-out", ".json");
+        try {
+            Files.writeString(in, json);
+            JsonMinifier.terse(in, out);
+            assertEquals(expected, Files.readString(out));
+            Files.writeString(in, "");
+            JsonMinifier.terse(in, out);
+            assertEquals("", Files.readString(out));
+        } finally {
+            Files.delete(in);
+            Files.delete(out);
+        }
+    }
+
     @RepeatedTest(1)
     public void terseJson() {
         assertEquals("[]", terse(toJson(List.of())));
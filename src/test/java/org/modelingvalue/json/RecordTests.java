@@ -20,6 +20,9 @@
 
 package org.modelingvalue.json;
 
+import java.util.List;
+import java.util.stream.IntStream;
+
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -95,9 +98,42 @@ public class RecordTests {
         assertTrue(r2.b());
     }
 
+    @Test
+    public void genericComponentsAndMissingPrimitives() {
+        ListRecord r1 = Json.fromJson(ListRecord.class, "{\"l\":[1,2,3],\"rs\":[{\"name\":\"a\",\"i\":1},{\"name\":\"b\",\"b\":true}]}");
+
+        assertEquals(List.of(1L, 2L, 3L), r1.l());
+        assertEquals(0, r1.n());
+        assertEquals(2, r1.rs().size());
+        assertEquals("a", r1.rs().get(0).name());
+        assertEquals(1, r1.rs().get(0).i());
+        assertFalse(r1.rs().get(0).b());
+        assertEquals(0, r1.rs().get(1).i());
+        assertTrue(r1.rs().get(1).b());
+    }
+
+    @Test
+    public void sharedTypeInfo() {
+        assertSame(TypeInfo.of(ListRecord.class, new Config().freeze()), TypeInfo.of(ListRecord.class, new Config().freeze()));
+        Config goOn = new Config();
+        goOn.ignoreUnkownFieldsInRecords = true;
+        assertNotSame(TypeInfo.of(ListRecord.class, new Config().freeze()), TypeInfo.of(ListRecord.class, goOn.freeze()));
+
+        // the slots and buffers of one parse are not shared with the parses on other threads
+        IntStream.range(0, 1_000).parallel().forEach(i -> {
+            ListRecord r = Json.fromJson(ListRecord.class, "{\"l\":[" + i + "," + (i + 1) + "],\"n\":" + i + ",\"rs\":[{\"name\":\"r" + i + "\",\"i\":" + i + "}]}");
+            assertEquals(List.of((long) i, i + 1L), r.l());
+            assertEquals(i, r.n());
+            assertEquals(new SimpleRecord("r" + i, null, i, false), r.rs().get(0));
+        });
+    }
+
     record SimpleRecord(String name, String version, int i, boolean b) {
     }
 
     record ComplexRecord(Float fff, SimpleRecord r) {
     }
+
+    record ListRecord(List<Long> l, int n, List<SimpleRecord> rs) {
+    }
 }
@@ -189,7 +189,6 @@ public class TestObjects {
         Map<String, Boolean> ma;
         List<Abstract>       listOfAbstract;
         Abstract             anAbstract;
-        //TODO
-        // Abstract[]           arrayOfAbstract;
+        Abstract[]           arrayOfAbstract;
     }
 }
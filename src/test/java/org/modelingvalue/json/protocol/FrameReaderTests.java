@@ -0,0 +1,144 @@
+//~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+//  (C) Copyright 2018-2026 Modeling Value Group B.V. (http://modelingvalue.org)                                         ~
+//                                                                                                                       ~
+//  Licensed under the GNU Lesser General Public License v3.0 (the 'License'). You may not use this file except in       ~
+//  compliance with the License. You may obtain a copy of the License at: https://choosealicense.com/licenses/lgpl-3.0   ~
+//  Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on  ~
+//  an 'AS IS' BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the   ~
+//  specific language governing permissions and limitations under the License.                                           ~
+//                                                                                                                       ~
+//  Maintainers:                                                                                                         ~
+//      Wim Bast, Tom Brus                                                                                               ~
+//                                                                                                                       ~
+//  Contributors:                                                                                                        ~
+//      Ronald Krijgsheld ✝, Arjan Kok, Carel Bast                                                                       ~
+// --------------------------------------------------------------------------------------------------------------------- ~
+//  In Memory of Ronald Krijgsheld, 1972 - 2023                                                                          ~
+//      Ronald was suddenly and unexpectedly taken from us. He was not only our long-term colleague and team member      ~
+//      but also our friend. "He will live on in many of the lines of code you see below."                               ~
+//~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+package org.modelingvalue.json.protocol;
+
+import org.junit.jupiter.api.Test;
+import org.modelingvalue.json.TestUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FrameReaderTests {
+    @Test
+    public void framesAcrossBlocks() throws IOException {
+        List<String>  expected = new ArrayList<>();
+        StringBuilder b        = new StringBuilder();
+        for (int i = 0; i < 2_000; i++) {
+            String frame = "m" + i + ":héllo • 😀 " + "x".repeat(i * 37 % 40_000);
+            expected.add(frame);
+            b.append(frame).append('\n');
+        }
+        b.append("last");
+        expected.add("last");
+
+        // a stream that hands out a few bytes at a time, so that frames and characters are split between reads
+        byte[]      bytes = b.toString().getBytes(StandardCharsets.UTF_8);
+        InputStream in    = new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte[] buf, int off, int len) {
+                return super.read(buf, off, Math.min(len, 1 + pos % 7000));
+            }
+        };
+        FrameReader  frames = new FrameReader(in, '\n');
+        List<String> read   = new ArrayList<>();
+        for (String frame; (frame = frames.readFrame()) != null; ) {
+            read.add(frame);
+        }
+        assertEquals(expected, read);
+        assertNull(frames.readFrame());
+    }
+
+    @Test
+    public void binaryFrames() throws IOException {
+        List<String>          expected = new ArrayList<>();
+        ByteArrayOutputStream bytes    = new ByteArrayOutputStream();
+        FrameWriter           writer   = new FrameWriter(bytes, ProtocolHandler.LENGTH_PREFIXED_FRAMES);
+        for (int i = 0; i < 2_000; i++) {
+            String keyword = "k" + i % 13;
+            String sender  = "s" + i % 3;
+            long   corr    = i % 3 == 0 ? 0 : i % 3 == 1 ? i : -i;
+            String json    = "\"m" + i + ":\n\uFFFF héllo • 😀 " + "x".repeat(i * 37 % 40_000) + "\"";
+            expected.add(keyword + "|" + sender + "|" + i + "|" + corr + "|" + json);
+            writer.write(keyword, sender, i, corr, json, writer.encode(keyword, sender, json));
+        }
+        writer.flush();
+
+        byte[]      all = bytes.toByteArray();
+        InputStream in  = new ByteArrayInputStream(all) {
+            @Override
+            public synchronized int read(byte[] buf, int off, int len) {
+                return super.read(buf, off, Math.min(len, 1 + pos % 7000));
+            }
+        };
+        List<String>    read     = new ArrayList<>();
+        ProtocolHandler recorder = new ProtocolHandler("recorder", InputStream.nullInputStream(), OutputStream.nullOutputStream(), ProtocolHandler.LENGTH_PREFIXED_FRAMES) {
+            @Override
+            void receivedFrame(String keyword, String senderUuid, long senderMessageNumber, long correlation, String json) {
+                read.add(keyword + "|" + senderUuid + "|" + senderMessageNumber + "|" + correlation + "|" + json);
+            }
+        };
+        FrameReader frames = new FrameReader(in, ProtocolHandler.LENGTH_PREFIXED_FRAMES);
+        while (frames.readBinaryFrame(recorder)) {
+            // the recorder collects them
+        }
+        assertEquals(expected, read);
+
+        FrameReader truncated = new FrameReader(new ByteArrayInputStream(all, 0, 10), ProtocolHandler.LENGTH_PREFIXED_FRAMES);
+        assertThrows(EOFException.class, () -> truncated.readBinaryFrame(recorder));
+        assertFalse(truncated.readBinaryFrame(recorder));
+
+        assertThrows(IllegalArgumentException.class, () -> writer.encode("k".repeat(0x10000), "s", "1"));
+    }
+
+    @Test
+    public void corruptFrameStopsReading() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            byte[]                corrupt = {0x7F, -1, -1, -1, 0, 0, 0, 0, 0, 0, 0, 0};
+            ByteArrayOutputStream sent    = new ByteArrayOutputStream();
+            ProtocolHandler       handler = new ProtocolHandler("corrupt", new ByteArrayInputStream(corrupt), sent, ProtocolHandler.LENGTH_PREFIXED_FRAMES);
+            handler.start();
+            TestUtil.assertEventually("stopped reading", () -> assertTrue(handler.isShutdown()));
+
+            List<String>    keywords = new ArrayList<>();
+            ProtocolHandler recorder = new ProtocolHandler("recorder", InputStream.nullInputStream(), OutputStream.nullOutputStream(), ProtocolHandler.LENGTH_PREFIXED_FRAMES) {
+                @Override
+                void receivedFrame(String keyword, String senderUuid, long senderMessageNumber, long correlation, String json) {
+                    keywords.add(keyword);
+                }
+            };
+            FrameReader frames = new FrameReader(new ByteArrayInputStream(sent.toByteArray()), ProtocolHandler.LENGTH_PREFIXED_FRAMES);
+            while (frames.readBinaryFrame(recorder)) {
+                // the recorder collects them
+            }
+            assertEquals(List.of(ProtocolHandler.PEER_FEATURES_MESSAGE_KEY, ProtocolHandler.PEER_ENTER_MESSAGE_KEY, ProtocolHandler.REMOTE_ERROR_MESSAGE_KEY), keywords);
+        });
+    }
+
+    @Test
+    public void asciiSeparatorsOnly() {
+        assertThrows(IllegalArgumentException.class, () -> new FrameReader(InputStream.nullInputStream(), '•'));
+    }
+}
@@ -0,0 +1,166 @@
+//~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+//  (C) Copyright 2018-2026 Modeling Value Group B.V. (http://modelingvalue.org)                                         ~
+//                                                                                                                       ~
+//  Licensed under the GNU Lesser General Public License v3.0 (the 'License'). You may not use this file except in       ~
+//  compliance with the License. You may obtain a copy of the License at: https://choosealicense.com/licenses/lgpl-3.0   ~
+//  Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on  ~
+//  an 'AS IS' BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the   ~
+//  specific language governing permissions and limitations under the License.                                           ~
+//                                                                                                                       ~
+//  Maintainers:                                                                                                         ~
+//      Wim Bast, Tom Brus                                                                                               ~
+//                                                                                                                       ~
+//  Contributors:                                                                                                        ~
+//      Ronald Krijgsheld ✝, Arjan Kok, Carel Bast                                                                       ~
+// --------------------------------------------------------------------------------------------------------------------- ~
+//  In Memory of Ronald Krijgsheld, 1972 - 2023                                                                          ~
+//      Ronald was suddenly and unexpectedly taken from us. He was not only our long-term colleague and team member      ~
+//      but also our friend. "He will live on in many of the lines of code you see below."                               ~
+//~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+package org.modelingvalue.json.protocol;
+
+import org.junit.jupiter.api.RepeatedTest;
+import org.modelingvalue.json.TestUtil;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NioProtocolTests {
+    private static final int PAIRS = 50;
+
+    @RepeatedTest(2)
+    public void manyConnectionsOnFewThreads() {
+        assertTimeoutPreemptively(Duration.ofSeconds(20), () -> {
+            try (NioTransport transport = new NioTransport(2);
+                 ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+                List<TestProtocolHandler> handlers = new ArrayList<>();
+                for (int i = 0; i < PAIRS; i++) {
+                    SocketChannel client   = SocketChannel.open(server.getLocalAddress());
+                    SocketChannel accepted = server.accept();
+                    handlers.add(new TestProtocolHandler("client-" + i, client, transport, '\n'));
+                    handlers.add(new TestProtocolHandler("server-" + i, accepted, transport, '\n'));
+                }
+                for (TestProtocolHandler h : handlers) {
+                    TestUtil.waitForSinglePeer(h);
+                }
+                for (int n = 0; n < 10; n++) {
+                    for (TestProtocolHandler h : handlers) {
+                        h.ping();
+                    }
+                }
+                for (TestProtocolHandler h : handlers) {
+                    TestUtil.assertEventually("pings arrived", () -> assertEquals(10L, h.getMyPingCount()));
+                    assertEquals(4711L, h.getMagic());
+                    assertEquals(10L, h.getPingCount());
+                    h.throwIfProblems();
+                }
+                for (int i = 0; i < handlers.size(); i += 2) {
+                    handlers.get(i).shutdown();
+                }
+                for (TestProtocolHandler h : handlers) {
+                    // the servers stop reading when their client is gone
+                    TestUtil.assertEventually("shutdown done", () -> assertTrue(h.isShutdown()));
+                }
+            }
+        });
+    }
+
+    @RepeatedTest(2)
+    public void largeAndNonAsciiMessages() {
+        assertTimeoutPreemptively(Duration.ofSeconds(20), () -> {
+            try (NioTransport transport = new NioTransport(1);
+                 ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+                SocketChannel       client   = SocketChannel.open(server.getLocalAddress());
+                SocketChannel       accepted = server.accept();
+                Map<String, Object> received = new ConcurrentHashMap<>();
+                ProtocolHandler     a        = new ProtocolHandler("a", client, transport, '\0');
+                ProtocolHandler     b        = new ProtocolHandler("b", accepted, transport, '\0');
+                b.add(MessageHandler.of("text", m -> received.put("text", m.json())));
+                a.start();
+                b.start();
+                TestUtil.waitForSinglePeer(a);
+
+                String text = "héllo • 😀 ".repeat(50_000);
+                a.send("text", text);
+                TestUtil.assertEventually("large message arrived", () -> assertEquals(text, received.get("text")));
+                a.shutdown();
+                TestUtil.assertEventually("shutdown done", () -> assertTrue(b.isShutdown()));
+            }
+        });
+    }
+
+    @RepeatedTest(2)
+    public void lengthPrefixedFrames() {
+        assertTimeoutPreemptively(Duration.ofSeconds(20), () -> {
+            try (NioTransport transport = new NioTransport(1);
+                 ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+                SocketChannel       client   = SocketChannel.open(server.getLocalAddress());
+                SocketChannel       accepted = server.accept();
+                TestProtocolHandler a        = new TestProtocolHandler("a", client, transport, ProtocolHandler.LENGTH_PREFIXED_FRAMES);
+                TestProtocolHandler b        = new TestProtocolHandler("b", accepted, transport, ProtocolHandler.LENGTH_PREFIXED_FRAMES);
+                Map<String, Object> received = new ConcurrentHashMap<>();
+                b.add(MessageHandler.of("text", m -> received.put("text", m.json())));
+                TestUtil.waitForSinglePeer(a);
+                TestUtil.waitForSinglePeer(b);
+
+                for (int i = 0; i < 100; i++) {
+                    a.ping();
+                }
+                assertEquals(100L, a.getPingCount());
+                assertEquals(4711L, a.getMagic());
+                String text = "héllo • 😀 \uFFFF ".repeat(50_000);
+                a.send("text", text);
+                TestUtil.assertEventually("large message arrived", () -> assertEquals(text, received.get("text")));
+                a.throwIfProblems();
+                b.throwIfProblems();
+                a.shutdown();
+                TestUtil.assertEventually("shutdown done", () -> assertTrue(b.isShutdown()));
+            }
+        });
+    }
+
+    @RepeatedTest(2)
+    public void failingInlineHandlerKeepsReading() {
+        assertTimeoutPreemptively(Duration.ofSeconds(20), () -> {
+            try (NioTransport transport = new NioTransport(1);
+                 ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+                SocketChannel       client   = SocketChannel.open(server.getLocalAddress());
+                SocketChannel       accepted = server.accept();
+                Map<String, Object> received = new ConcurrentHashMap<>();
+                ProtocolHandler     a        = new ProtocolHandler("a", client, transport, '\n');
+                ProtocolHandler     b        = new ProtocolHandler("b", accepted, transport, '\n');
+                assertEquals(HandlerDispatcher.Order.PER_PEER, b.getDispatcher().getOrder());
+                // inline, so that the handler fails on the selector thread
+                b.setDispatcher(HandlerDispatcher.INLINE);
+                b.add(MessageHandler.of("boom", m -> {
+                    throw new IllegalStateException("boom");
+                }));
+                b.add(MessageHandler.of("text", m -> received.put("text", m.json())));
+                a.start();
+                b.start();
+                TestUtil.waitForSinglePeer(a);
+
+                a.send("boom", 1);
+                a.send("text", "after the failure");
+                TestUtil.assertEventually("still reading", () -> assertEquals("after the failure", received.get("text")));
+                TestUtil.assertEventually("failure reported", () -> assertNotNull(a.getLastMessage(ProtocolHandler.REMOTE_ERROR_MESSAGE_KEY, b.getUUID())));
+                assertTrue(b.getPeerMap().containsKey(a.getUUID()));
+                a.shutdown();
+                TestUtil.assertEventually("shutdown done", () -> assertTrue(b.isShutdown()));
+            }
+        });
+    }
+}
@@ -25,13 +25,31 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.RepeatedTest;
 import org.modelingvalue.json.TestUtil;
 
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -78,12 +96,50 @@ public class ProtocolTests {
         });
     }
 
+    @RepeatedTest(4)
+    public void concurrentSendTest() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            Thread[] senders = new Thread[8];
+            for (int i = 0; i < senders.length; i++) {
+                senders[i] = new Thread(() -> {
+                    for (int j = 0; j < 250; j++) {
+                        tph.ping();
+                    }
+                }, "sender-" + i);
+                senders[i].start();
+            }
+            for (Thread sender : senders) {
+                sender.join();
+            }
+            assertEquals(2000L, tph.getPingCount());
+        });
+    }
+
+    @RepeatedTest(4)
+    public void submitTest() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            List<CompletableFuture<Void>> written = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                written.add(tph.submit(TestProtocolHandler.PING_MESSAGE_KEY, null));
+            }
+            for (CompletableFuture<Void> w : written) {
+                assertNull(w.get(2, TimeUnit.SECONDS));
+            }
+            assertEquals(100L, tph.getPingCount());
+
+            tph.shutdown();
+            TestUtil.assertEventually("shutdown done", () -> assertTrue(tph.isShutdown()));
+            assertThrows(RuntimeException.class, () -> tph.submit(TestProtocolHandler.PING_MESSAGE_KEY, null));
+        });
+    }
+
     @RepeatedTest(4)
     public void seqNumberTest() {
         assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            // the $peer_features handshake is message 0 on both sides
             Message message = tph.sendAndReceiveSingle("getPingCount", "pingCount", null);
-            assertEquals(1, message.senderMessageNumber());
-            assertEquals(1, message.receiverMessageNumber());
+            assertEquals(2, message.senderMessageNumber());
+            assertEquals(2, message.receiverMessageNumber());
             assertEquals(0L, ((Map<String, Long>) message.json()).get(tph.getUUID()));
 
             for (int i = 0; i < 100; i++) {
@@ -91,13 +147,13 @@ public class ProtocolTests {
             }
 
             message = tph.sendAndReceiveSingle("getPingCount", "pingCount", null);
-            assertEquals(2, message.senderMessageNumber());
-            assertEquals(2, message.receiverMessageNumber());
+            assertEquals(3, message.senderMessageNumber());
+            assertEquals(3, message.receiverMessageNumber());
             assertEquals(100L, ((Map<String, Long>) message.json()).get(tph.getUUID()));
 
             message = tph.sendAndReceiveSingle("getPingCount", "pingCount", null);
-            assertEquals(3, message.senderMessageNumber());
-            assertEquals(3, message.receiverMessageNumber());
+            assertEquals(4, message.senderMessageNumber());
+            assertEquals(4, message.receiverMessageNumber());
             assertEquals(100L, ((Map<String, Long>) message.json()).get(tph.getUUID()));
         });
     }
@@ -123,6 +179,203 @@ public class ProtocolTests {
         });
     }
 
+    @RepeatedTest(4)
+    public void pipelinedRequestTest() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            List<CompletableFuture<Map<String, Message>>> requests = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                requests.add(tph.request(TestProtocolHandler.GET_MAGIC_MESSAGE_KEY, TestProtocolHandler.MAGIC_MESSAGE_KEY, null, Duration.ofSeconds(5)));
+                tph.ping();
+            }
+            for (CompletableFuture<Map<String, Message>> request : requests) {
+                Message answer = request.get().get(tph.peer.getUUID());
+                assertEquals(4711L, ((Map<?, ?>) answer.json()).get("magicNumber"));
+                assertTrue(0 < answer.correlationId());
+            }
+            assertEquals(100L, tph.getPingCount());
+        });
+    }
+
+    @RepeatedTest(4)
+    public void requestTimeoutTest() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            CompletableFuture<Map<String, Message>> request = tph.request("what?", "nothing", null, Duration.ofMillis(100));
+            ExecutionException                      e       = assertThrows(ExecutionException.class, request::get);
+            assertInstanceOf(TimeoutException.class, e.getCause());
+            // a keyword with a mark that is not followed by an id is just a keyword
+            assertEquals("what?", tph.peer.getLastMessageSingle("what?").keyword());
+        });
+    }
+
+    @RepeatedTest(4)
+    public void uncorrelatedAnswerTest() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            // a peer that correlates answers with a correlation, so an uncorrelated message is not taken for an answer
+            CountDownLatch             asked   = new CountDownLatch(1);
+            CountDownLatch             handled = new CountDownLatch(1);
+            CompletableFuture<Message> askedBy = new CompletableFuture<>();
+            tph.add(MessageHandler.of("answerLater", m -> handled.countDown()));
+            tph.peer.add(MessageHandler.of("askLater", "answerLater", m -> {
+                askedBy.complete(m);
+                asked.countDown();
+            }));
+            CompletableFuture<Map<String, Message>> request = tph.request("askLater", "answerLater", null, Duration.ofSeconds(2));
+            asked.await();
+            tph.peer.send("answerLater", 42);
+            assertTrue(handled.await(2, TimeUnit.SECONDS));
+            assertFalse(request.isDone());
+
+            Message question = askedBy.get();
+            Thread  later    = new Thread(() -> tph.peer.reply(question, "answerLater", 43));
+            later.start();
+            later.join();
+            Message answer = request.get().get(tph.peer.getUUID());
+            assertEquals(43L, answer.json());
+            assertEquals(question.correlationId(), answer.correlationId());
+        });
+    }
+
+    @RepeatedTest(4)
+    public void olderPeerTest() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            // the peer says it does not know correlation, like a peer from before it existed
+            tph.peer.send(ProtocolHandler.PEER_FEATURES_MESSAGE_KEY, List.of());
+            TestUtil.assertEventually("features known", () -> assertEquals(List.of(), tph.getLastMessageSingle(ProtocolHandler.PEER_FEATURES_MESSAGE_KEY).json()));
+            Message answer = tph.request(TestProtocolHandler.GET_MAGIC_MESSAGE_KEY, TestProtocolHandler.MAGIC_MESSAGE_KEY, null).get(2, TimeUnit.SECONDS).get(tph.peer.getUUID());
+            assertEquals(4711L, ((Map<?, ?>) answer.json()).get("magicNumber"));
+            assertEquals(0, answer.correlationId());
+            assertEquals(0, tph.peer.getLastMessageSingle(TestProtocolHandler.GET_MAGIC_MESSAGE_KEY).correlationId());
+
+            // and what looks like a mark and an id in its keywords is just part of the keyword
+            tph.peer.send("what?7", "x");
+            TestUtil.assertEventually("keyword kept", () -> {
+                Message what = tph.getLastMessage("what?7", tph.peer.getUUID());
+                assertNotNull(what);
+                assertEquals("x", what.json());
+            });
+        });
+    }
+
+    @RepeatedTest(4)
+    public void baselinePeerTest() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            // a peer from before $peer_features, played by hand: it numbers what it sends and counts every line it gets
+            PipedInputStream  in      = new PipedInputStream();
+            PipedInputStream  fromNew = new PipedInputStream();
+            PipedOutputStream toNew   = new PipedOutputStream(in);
+            BufferedReader    lines   = new BufferedReader(new InputStreamReader(fromNew, StandardCharsets.UTF_8));
+            ProtocolHandler   handler = new ProtocolHandler("new", in, new PipedOutputStream(fromNew), '\n');
+            handler.start();
+            toNew.write("$peer_enter:baseline:0:\"baseline\"\n".getBytes(StandardCharsets.UTF_8));
+            toNew.flush();
+            TestUtil.assertEventually("baseline entered", () -> assertEquals(Map.of("baseline", "baseline"), handler.getPeerMap()));
+
+            CompletableFuture<Map<String, Message>> request = handler.request("ask", "answer", null);
+            List<String>                            got     = new ArrayList<>();
+            while (got.size() < 3) {
+                String   line  = lines.readLine();
+                String[] split = line.split(":", 4);
+                assertEquals(got.size(), Long.parseLong(split[2]), line);
+                got.add(split[0]);
+            }
+            assertEquals(List.of(ProtocolHandler.PEER_FEATURES_MESSAGE_KEY, ProtocolHandler.PEER_ENTER_MESSAGE_KEY, "ask"), got);
+
+            // the baseline answers without correlation
+            toNew.write("answer:baseline:1:42\n".getBytes(StandardCharsets.UTF_8));
+            toNew.flush();
+            Message answer = request.get(2, TimeUnit.SECONDS).get("baseline");
+            assertEquals(42L, answer.json());
+            assertEquals(0, answer.correlationId());
+            assertEquals(1, answer.senderMessageNumber());
+            assertEquals(1, answer.receiverMessageNumber());
+
+            handler.shutdown();
+            toNew.close();
+        });
+    }
+
+    @RepeatedTest(4)
+    public void perPeerDispatchTest() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            tph.setDispatcher(HandlerDispatcher.perPeer());
+            tph.peer.setDispatcher(HandlerDispatcher.perPeer());
+            for (int i = 0; i < 100; i++) {
+                tph.ping();
+            }
+            assertEquals(100L, tph.getPingCount());
+            assertEquals(4711L, tph.getMagic());
+        });
+    }
+
+    @RepeatedTest(4)
+    public void perKeywordDispatchTest() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            CountDownLatch release = new CountDownLatch(1);
+            tph.peer.add(MessageHandler.of("slow", m -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+            tph.peer.setDispatcher(HandlerDispatcher.perKeyword());
+            tph.send("slow", null);
+            assertEquals(4711L, tph.getMagic());
+            release.countDown();
+        });
+    }
+
+    @RepeatedTest(4)
+    public void builtinHandlersInlineTest() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            CountDownLatch release = new CountDownLatch(1);
+            tph.peer.add(MessageHandler.of("slow", m -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+            tph.peer.setDispatcher(HandlerDispatcher.perPeer());
+            tph.send("slow", null);
+            tph.send(ProtocolHandler.PEER_ENTER_MESSAGE_KEY, "renamed");
+            TestUtil.assertEventually("peer enter handled while the slow handler still runs", () -> assertEquals("renamed", tph.peer.getPeerMap().get(tph.getUUID())));
+            release.countDown();
+        });
+    }
+
+    @RepeatedTest(1)
+    public void dispatchPropertyTest() {
+        String old = System.getProperty("PROTOCOL.DISPATCH");
+        try {
+            System.setProperty("PROTOCOL.DISPATCH", "per_keyword");
+            assertEquals(HandlerDispatcher.Order.PER_KEYWORD, HandlerDispatcher.ofDefault().getOrder());
+            System.setProperty("PROTOCOL.DISPATCH", "PER-PEER");
+            assertThrows(IllegalArgumentException.class, HandlerDispatcher::ofDefault);
+        } finally {
+            if (old == null) {
+                System.clearProperty("PROTOCOL.DISPATCH");
+            } else {
+                System.setProperty("PROTOCOL.DISPATCH", old);
+            }
+        }
+    }
+
+    @RepeatedTest(1)
+    public void rejectedDispatchTest() {
+        ExecutorService   executor   = Executors.newSingleThreadExecutor();
+        HandlerDispatcher dispatcher = new HandlerDispatcher(HandlerDispatcher.Order.PER_KEYWORD, executor);
+        Message           message    = new Message.MessageImpl("k", "peer", 0, 0, null, 0);
+        executor.shutdown();
+        assertThrows(RejectedExecutionException.class, () -> dispatcher.dispatch(message, () -> {
+        }));
+
+        // the serial of the keyword is not stuck as running: it tries the executor again
+        CountDownLatch ran = new CountDownLatch(1);
+        assertThrows(RejectedExecutionException.class, () -> dispatcher.dispatch(message, ran::countDown));
+        assertEquals(1, ran.getCount());
+    }
+
     @RepeatedTest(4)
     public void shutdownTest() {
         assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
@@ -134,6 +387,8 @@ public class ProtocolTests {
 
             tph.shutdown();
             TestUtil.assertEventually("shutdown done", () -> assertTrue(tph.isShutdown()));
+            assertTrue(tph.peer.getPeerMap().isEmpty(), "the $peer_leave should have reached the peer");
+            assertThrows(RuntimeException.class, tph::ping);
         });
     }
 
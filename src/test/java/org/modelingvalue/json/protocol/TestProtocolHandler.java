@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -46,12 +47,20 @@ public class TestProtocolHandler extends ProtocolHandler {
 
     public TestProtocolHandler(String id, InputStream in, OutputStream out, char messageSeparator) {
         super(id, in, out, messageSeparator);
+        addTestHandlers();
+        start();
+    }
 
+    public TestProtocolHandler(String id, SocketChannel channel, NioTransport transport, char messageSeparator) {
+        super(id, channel, transport, messageSeparator);
+        addTestHandlers();
+        start();
+    }
+
+    private void addTestHandlers() {
         add(MessageHandler.of(PING_MESSAGE_KEY, m -> pingCountMap.compute(m.senderUuid(), (k, old) -> (old == null ? 0 : old) + 1)));
         add(MessageHandler.of(GET_PING_COUNT_MESSAGE_KEY, PING_COUNT_MESSAGE_KEY, m -> send(PING_COUNT_MESSAGE_KEY, pingCountMap)));
         add(MessageHandler.of(GET_MAGIC_MESSAGE_KEY, MAGIC_MESSAGE_KEY, m -> send(MAGIC_MESSAGE_KEY, Map.of("magicNumber", 4711L))));
-
-        start();
     }
 
     public void ping() {